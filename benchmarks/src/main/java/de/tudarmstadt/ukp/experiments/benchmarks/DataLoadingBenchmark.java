@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.ClassificationMain;
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.ColumnarDataset;
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.SingleInstance;
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.TSVDataLoader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the train/dev/test TSV files and parsing single instances
+ *
+ * @author Ivan Habernal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataLoadingBenchmark
+{
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    private File file;
+
+    private List<String> lines;
+
+    @Setup
+    public void setUp()
+            throws IOException
+    {
+        file = File.createTempFile("instances", ".tsv");
+        SyntheticData.writeInstances(file, size, 0);
+        lines = SyntheticData.instanceLines(size, 0);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public Set<SingleInstance> loadData()
+            throws IOException
+    {
+        return ClassificationMain.loadData(file);
+    }
+
+    @Benchmark
+    public ColumnarDataset loadColumnar()
+            throws IOException
+    {
+        return TSVDataLoader.loadColumnar(file);
+    }
+
+    @Benchmark
+    public void parseSingleInstances(Blackhole blackhole)
+    {
+        for (String line : lines) {
+            blackhole.consume(new SingleInstance(line));
+        }
+    }
+}
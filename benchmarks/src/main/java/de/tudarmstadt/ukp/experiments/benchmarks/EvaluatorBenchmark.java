@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.ColumnarDataset;
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.Evaluator;
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.PredictedInstance;
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.SingleInstance;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accuracy of predictions, both on instance sets and on the columnar representation
+ *
+ * @author Ivan Habernal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluatorBenchmark
+{
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    private Set<PredictedInstance> predictedInstances;
+
+    private ColumnarDataset dataset;
+
+    private byte[] predictions;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(0);
+        List<String> lines = SyntheticData.instanceLines(size, 0);
+
+        predictedInstances = new HashSet<>();
+        for (String line : lines) {
+            PredictedInstance predictedInstance = new PredictedInstance(new SingleInstance(line));
+            predictedInstance.setPredictedLabelW0orW1(random.nextInt(2));
+            predictedInstances.add(predictedInstance);
+        }
+
+        dataset = ColumnarDataset.fromInstances(predictedInstances);
+        predictions = new byte[dataset.size()];
+        for (int i = 0; i < predictions.length; i++) {
+            predictions[i] = (byte) random.nextInt(2);
+        }
+    }
+
+    @Benchmark
+    public double computeAccuracy()
+    {
+        return Evaluator.computeAccuracy(predictedInstances);
+    }
+
+    @Benchmark
+    public double computeAccuracyColumnar()
+    {
+        return Evaluator.computeAccuracy(dataset, predictions);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.pipeline.gold.MACEHelper;
+import de.tudarmstadt.ukp.experiments.pipeline.gold.SingleWorkerAssignment;
+import de.tudarmstadt.ukp.experiments.pipeline.gold.SyntheticCrowdGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+
+/**
+ * Scaling of gold-label estimation ({@link MACEHelper#estimateGoldLabels}) on synthetic
+ * crowds from {@link SyntheticCrowdGenerator}: runtime, peak heap and accuracy of the
+ * recovered labels for each combination of items, workers, labels and assignments per
+ * item. Not a JMH benchmark, as a single estimation of the larger sizes takes minutes; each
+ * configuration runs once, after a warm-up on the smallest one.
+ * <p>
+ * The grid is given by comma-separated system properties {@code scale.items},
+ * {@code scale.workers}, {@code scale.labels} and {@code scale.redundancy}; the crowd by
+ * {@code scale.spammers} and {@code scale.biased} (fractions of workers) and
+ * {@code scale.seed}.
+ *
+ * @author Ivan Habernal
+ */
+public class GoldEstimationScaleSuite
+{
+    public static void main(String[] args)
+            throws IOException
+    {
+        int[] items = parseGrid("scale.items", "1000,10000,100000");
+        int[] workers = parseGrid("scale.workers", "100,1000");
+        int[] labels = parseGrid("scale.labels", "2,5");
+        int[] redundancy = parseGrid("scale.redundancy", "5");
+        double spammers = Double.parseDouble(System.getProperty("scale.spammers", "0.1"));
+        double biased = Double.parseDouble(System.getProperty("scale.biased", "0.1"));
+        long seed = Long.getLong("scale.seed", 0);
+
+        // warm-up
+        run(items[0], workers[0], labels[0], redundancy[0], spammers, biased, seed);
+
+        System.out.println("items\tworkers\tlabels\tredundancy\tassignments\ttimeMs"
+                + "\titerations\tdataHeapMB\tpeakHeapMB\taccuracy\tmajorityAccuracy");
+        for (int i : items) {
+            for (int w : workers) {
+                for (int l : labels) {
+                    for (int r : redundancy) {
+                        if (r > w) {
+                            continue;
+                        }
+                        System.out.println(run(i, w, l, r, spammers, biased, seed));
+                    }
+                }
+            }
+        }
+    }
+
+    private static String run(int items, int workers, int labels, int redundancy,
+            double spammers, double biased, long seed)
+            throws IOException
+    {
+        SyntheticCrowdGenerator.Crowd crowd = new SyntheticCrowdGenerator(seed).setItems(items)
+                .setWorkers(workers).setLabels(labels).setAssignmentsPerItem(redundancy)
+                .setWorkerTypes(spammers, biased, 0.8).generate();
+
+        // heap of the generated data, then peak during the estimation
+        System.gc();
+        long dataHeap = usedHeap();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+
+        // MACE and MACEHelper print every worker and its competence
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+            }
+        }));
+        MACEHelper.GoldLabelEstimationResultContainer result;
+        long start = System.nanoTime();
+        try {
+            result = MACEHelper.estimateGoldLabels(crowd.assignments, 1.0);
+        }
+        finally {
+            System.setOut(out);
+        }
+        long time = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        return String.format(Locale.ENGLISH,
+                "%d\t%d\t%d\t%d\t%d\t%.0f\t%d\t%.1f\t%.1f\t%.4f\t%.4f",
+                items, workers, labels, redundancy, (long) items * redundancy,
+                time / 1e6, result.mace.getIterationsRun(),
+                dataHeap / 1048576.0, peakHeap / 1048576.0,
+                crowd.getAccuracy(result.goldLabels),
+                crowd.getAccuracy(majorityLabels(crowd)));
+    }
+
+    /**
+     * Baseline: most frequent label of each item (the first one on ties)
+     */
+    private static SortedMap<String, String> majorityLabels(
+            SyntheticCrowdGenerator.Crowd crowd)
+    {
+        SortedMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, SortedSet<SingleWorkerAssignment<String>>> entry : crowd
+                .assignments.entrySet()) {
+            Map<String, Integer> counts = new HashMap<>();
+            String best = null;
+            for (SingleWorkerAssignment<String> assignment : entry.getValue()) {
+                int count = counts.merge(assignment.getLabel(), 1, Integer::sum);
+                if (best == null || count > counts.get(best)) {
+                    best = assignment.getLabel();
+                }
+            }
+            result.put(entry.getKey(), best);
+        }
+        return result;
+    }
+
+    private static long usedHeap()
+    {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static List<MemoryPoolMXBean> heapPools()
+    {
+        List<MemoryPoolMXBean> result = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                result.add(pool);
+            }
+        }
+        return result;
+    }
+
+    private static int[] parseGrid(String property, String defaultValue)
+    {
+        String[] values = System.getProperty(property, defaultValue).split(",");
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Integer.parseInt(values[i].trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+***************************************************************************
+NTP License
+https://opensource.org/licenses/NTP
+
+
+      USC/ISI MACE Multi-Annotator Competence Estimation  
+
+      USC Information Sciences Institute
+      4676 Admiralty Way 
+      Marina del Rey, CA 90292-6695 
+      USA 
+
+      Original Version: Natural Language Group, April 2013 
+      Current Version:  Natural Language Group, April 2013
+
+  Copyright (c) 2013 by the University of Southern California
+  All rights reserved.
+
+  Permission to use, copy, modify, and distribute this software and its
+  documentation in source and binary forms for any purpose and without
+  fee is hereby granted, provided that both the above copyright notice
+  and this permission notice appear in all copies, and that any
+  documentation, advertising materials, and other materials related to
+  such distribution and use acknowledge that the software was developed
+  in part by the University of Southern California, Information
+  Sciences Institute.  The name of the University may not be used to
+  endorse or promote products derived from this software without
+  specific prior written permission.
+
+  THE UNIVERSITY OF SOUTHERN CALIFORNIA makes no representations about
+  the suitability of this software for any purpose.  THIS SOFTWARE IS
+  PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES,
+  INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+
+  Other copyrights might apply to parts of this software and are so
+  noted when applicable.
+
+***************************************************************************
+*/
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.pipeline.gold.MACE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * EM core of {@link MACE} before it was moved to flat arrays (nested {@code double[][]}
+ * matrices, new matrices on each M-step, control items looked up in a map); kept only as
+ * the reference for {@link MACEKernelBenchmark}
+ *
+ * @author tberg, dirkh, avaswani
+ */
+public class LegacyMACE
+{
+    private final int numInstances;
+    private int numAnnotators;
+    private final int numLabels;
+
+    // [d][ai]
+    private final int[][] whoLabeled;
+    // [d][ai]
+    private final int[][] labels;
+
+    // [a][2]
+    private double[][] thetas;
+    // [a][l]
+    private double[][] strategies;
+
+    // [d][l]
+    private final double[][] goldLabelMarginals;
+    // [a][l]
+    private final double[][] strategyExpectedCounts;
+    // [a][2]
+    private final double[][] knowingExpectedCounts;
+
+    private double[][] thetaPriors;
+    private double[][] strategyPriors;
+
+    private double logMarginalLikelhood;
+
+    /**
+     * Reads the CSV input of {@link MACE} (labels are numbered in the order of their first
+     * occurrence, as in MACE)
+     */
+    public LegacyMACE(File csvFile)
+            throws IOException
+    {
+        List<String> lines = Files.readAllLines(csvFile.toPath(), StandardCharsets.UTF_8);
+        numInstances = lines.size();
+        labels = new int[numInstances][];
+        whoLabeled = new int[numInstances][];
+
+        Map<String, Integer> labelIds = new HashMap<>();
+        for (int d = 0; d < numInstances; d++) {
+            String[] cells = lines.get(d).split(",", -1);
+            numAnnotators = cells.length;
+
+            List<Integer> annotators = new ArrayList<>();
+            List<Integer> values = new ArrayList<>();
+            for (int a = 0; a < cells.length; a++) {
+                if (!cells[a].isEmpty()) {
+                    labelIds.putIfAbsent(cells[a], labelIds.size());
+                    annotators.add(a);
+                    values.add(labelIds.get(cells[a]));
+                }
+            }
+
+            whoLabeled[d] = annotators.stream().mapToInt(Integer::intValue).toArray();
+            labels[d] = values.stream().mapToInt(Integer::intValue).toArray();
+        }
+        numLabels = labelIds.size();
+
+        goldLabelMarginals = new double[numInstances][numLabels];
+        strategyExpectedCounts = new double[numAnnotators][numLabels];
+        knowingExpectedCounts = new double[numAnnotators][2];
+    }
+
+    public void initialize(double initNoise, long seed)
+    {
+        Random rand = new Random(seed);
+        this.thetas = new double[numAnnotators][2];
+        this.strategies = new double[numAnnotators][numLabels];
+        for (int a = 0; a < numAnnotators; ++a) {
+            Arrays.fill(thetas[a], 1.0);
+            Arrays.fill(strategies[a], 1.0);
+            thetas[a][0] += initNoise * rand.nextDouble();
+            thetas[a][1] += initNoise * rand.nextDouble();
+            for (int l = 0; l < numLabels; ++l) {
+                strategies[a][l] += initNoise * rand.nextDouble();
+            }
+        }
+        MACE.normalizeInPlace(thetas, 0.0);
+        MACE.normalizeInPlace(strategies, 0.0);
+
+        this.thetaPriors = new double[numAnnotators][2];
+        this.strategyPriors = new double[numAnnotators][numLabels];
+        for (int a = 0; a < numAnnotators; ++a) {
+            thetaPriors[a][0] = MACE.DEFAULT_ALPHA;
+            thetaPriors[a][1] = MACE.DEFAULT_BETA;
+            Arrays.fill(strategyPriors[a], 10.0);
+        }
+    }
+
+    public void EStep(Map<Integer, Integer> controls)
+    {
+        for (int d = 0; d < numInstances; ++d) {
+            for (int l = 0; l < numLabels; ++l) {
+                goldLabelMarginals[d][l] = 0.0;
+            }
+        }
+        for (int a = 0; a < numAnnotators; ++a) {
+            knowingExpectedCounts[a][0] = 0.0;
+            knowingExpectedCounts[a][1] = 0.0;
+            for (int l = 0; l < numLabels; ++l) {
+                strategyExpectedCounts[a][l] = 0.0;
+            }
+        }
+
+        logMarginalLikelhood = 0.0;
+
+        for (int d = 0; d < numInstances; ++d) {
+            double instanceMarginal = 0.0;
+
+            for (int l = 0; l < numLabels; ++l) {
+                double goldLabelMarginal = (1.0 / numLabels);
+                for (int ai = 0; ai < labels[d].length; ++ai) {
+                    int a = whoLabeled[d][ai];
+
+                    goldLabelMarginal *= thetas[a][0] * strategies[a][labels[d][ai]] + (
+                            l == labels[d][ai] ? thetas[a][1] : 0.0);
+                }
+
+                if (!controls.containsKey(d) || (controls.containsKey(d) && l == controls
+                        .get(d))) {
+                    instanceMarginal += goldLabelMarginal;
+                    goldLabelMarginals[d][l] = goldLabelMarginal;
+                }
+            }
+
+            logMarginalLikelhood += Math.log(instanceMarginal);
+
+            for (int ai = 0; ai < labels[d].length; ++ai) {
+                int a = whoLabeled[d][ai];
+                double strategyMarginal = 0.0;
+
+                if (controls.containsKey(d)) {
+                    if (labels[d][ai] == controls.get(d)) {
+                        {
+                            int l = controls.get(d);
+                            strategyMarginal += goldLabelMarginals[d][l] / (
+                                    thetas[a][0] * strategies[a][labels[d][ai]] + (
+                                            l == labels[d][ai] ? thetas[a][1] : 0.0));
+                        }
+                        strategyMarginal *= thetas[a][0] * strategies[a][labels[d][ai]];
+                        strategyExpectedCounts[a][labels[d][ai]] +=
+                                strategyMarginal / instanceMarginal;
+                        knowingExpectedCounts[a][0] += strategyMarginal / instanceMarginal;
+                        knowingExpectedCounts[a][1] +=
+                                (goldLabelMarginals[d][labels[d][ai]] * thetas[a][1] / (
+                                        thetas[a][0] * strategies[a][labels[d][ai]]
+                                                + thetas[a][1])) / instanceMarginal;
+                    }
+                    else {
+                        strategyExpectedCounts[a][labels[d][ai]] += 1.0;
+                        knowingExpectedCounts[a][0] += 1.0;
+                    }
+                }
+                else {
+                    for (int l = 0; l < numLabels; ++l) {
+                        strategyMarginal += goldLabelMarginals[d][l] / (
+                                thetas[a][0] * strategies[a][labels[d][ai]] + (
+                                        l == labels[d][ai] ? thetas[a][1] : 0.0));
+                    }
+                    strategyMarginal *= thetas[a][0] * strategies[a][labels[d][ai]];
+                    strategyExpectedCounts[a][labels[d][ai]] +=
+                            strategyMarginal / instanceMarginal;
+                    knowingExpectedCounts[a][0] += strategyMarginal / instanceMarginal;
+                    knowingExpectedCounts[a][1] +=
+                            (goldLabelMarginals[d][labels[d][ai]] * thetas[a][1] / (
+                                    thetas[a][0] * strategies[a][labels[d][ai]]
+                                            + thetas[a][1])) / instanceMarginal;
+                }
+            }
+        }
+    }
+
+    public void MStep(double smoothing)
+    {
+        thetas = MACE.normalize(knowingExpectedCounts, smoothing);
+        strategies = MACE.normalize(strategyExpectedCounts, smoothing);
+    }
+
+    public void variationalMStep()
+    {
+        thetas = MACE.variationalNormalize(knowingExpectedCounts, thetaPriors);
+        strategies = MACE.variationalNormalize(strategyExpectedCounts, strategyPriors);
+    }
+
+    public double getLogMarginalLikelihood()
+    {
+        return logMarginalLikelhood;
+    }
+
+    public double[] getCompetences()
+    {
+        double[] result = new double[numAnnotators];
+        for (int a = 0; a < numAnnotators; a++) {
+            result[a] = thetas[a][1];
+        }
+        return result;
+    }
+
+    public double[] getLabelEntropies()
+    {
+        double[] result = new double[numInstances];
+
+        for (int d = 0; d < numInstances; ++d) {
+            double norm = 0.0;
+            double entropy = 0.0;
+            for (int l = 0; l < numLabels; ++l) {
+                norm += goldLabelMarginals[d][l];
+            }
+            for (int l = 0; l < numLabels; ++l) {
+                double p = goldLabelMarginals[d][l] / norm;
+                if (p > 0.0) {
+                    entropy += -p * Math.log(p);
+                }
+            }
+            result[d] = entropy;
+        }
+
+        return result;
+    }
+}
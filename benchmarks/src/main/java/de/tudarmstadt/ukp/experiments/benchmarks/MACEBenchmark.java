@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.pipeline.gold.MACE;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single EM iteration of MACE on a synthetic annotation matrix with 50 annotators and
+ * binary labels
+ *
+ * @author Ivan Habernal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MACEBenchmark
+{
+    private static final int ANNOTATORS = 50;
+
+    private static final Map<Integer, Integer> NO_CONTROLS = Collections.emptyMap();
+
+    @Param({ "1000", "10000", "100000" })
+    public int items;
+
+    @Param({ "5", "10" })
+    public int labelsPerItem;
+
+    private MACE mace;
+
+    @Setup
+    public void setUp()
+            throws IOException
+    {
+        File file = File.createTempFile("mace", ".csv");
+        try {
+            SyntheticData.writeMACEInput(file, items, ANNOTATORS, labelsPerItem, 2, 0);
+            mace = new MACE(file.getAbsolutePath());
+        }
+        finally {
+            file.delete();
+        }
+
+        mace.initialize(0.5);
+        // expected counts for MStep
+        mace.EStep(NO_CONTROLS);
+    }
+
+    @Benchmark
+    public MACE eStep()
+    {
+        mace.EStep(NO_CONTROLS);
+        return mace;
+    }
+
+    @Benchmark
+    public MACE mStep()
+    {
+        mace.MStep(0.01);
+        return mace;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.pipeline.gold.MACE;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One EM iteration (M-step and E-step) of the flat-array kernel of {@link MACE} compared to
+ * the previous implementation ({@link LegacyMACE}). The setup first checks that both give
+ * the same likelihood, competences and entropies (to 1e-9, relative for values above 1; the
+ * E-step sums chunks of instances separately) after {@link #CHECKED_ITERATIONS} iterations
+ * from the same initialization.
+ *
+ * @author Ivan Habernal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MACEKernelBenchmark
+{
+    private static final int ANNOTATORS = 50;
+    private static final int LABELS_PER_ITEM = 5;
+    private static final int CHECKED_ITERATIONS = 20;
+    private static final double TOLERANCE = 1e-9;
+    private static final long SEED = 0;
+
+    private static final Map<Integer, Integer> NO_CONTROLS = Collections.emptyMap();
+
+    @Param({ "1000", "10000", "100000" })
+    public int items;
+
+    @Param({ "2", "5" })
+    public int numberOfLabels;
+
+    @Param({ "false", "true" })
+    public boolean variational;
+
+    private MACE mace;
+    private LegacyMACE legacyMACE;
+
+    @Setup
+    public void setUp()
+            throws IOException
+    {
+        File file = File.createTempFile("mace", ".csv");
+        try {
+            SyntheticData.writeMACEInput(file, items, ANNOTATORS, LABELS_PER_ITEM,
+                    numberOfLabels, 0);
+            mace = new MACE(file.getAbsolutePath());
+            legacyMACE = new LegacyMACE(file);
+        }
+        finally {
+            file.delete();
+        }
+
+        initialize();
+        for (int i = 0; i < CHECKED_ITERATIONS; i++) {
+            flatIteration();
+            legacyIteration();
+        }
+        check("log marginal likelihood", new double[] { mace.getLogMarginalLikelihood() },
+                new double[] { legacyMACE.getLogMarginalLikelihood() });
+        check("competences", mace.getCompetences(), legacyMACE.getCompetences());
+        check("entropies", mace.getLabelEntropies(), legacyMACE.getLabelEntropies());
+
+        initialize();
+    }
+
+    private void initialize()
+    {
+        mace.setSeed(SEED);
+        mace.initialize(0.5, MACE.DEFAULT_ALPHA, MACE.DEFAULT_BETA);
+        mace.EStep(NO_CONTROLS);
+
+        legacyMACE.initialize(0.5, SEED);
+        legacyMACE.EStep(NO_CONTROLS);
+    }
+
+    private static void check(String name, double[] actual, double[] expected)
+    {
+        if (actual.length != expected.length) {
+            throw new IllegalStateException(
+                    "Different number of " + name + ": " + actual.length + ", "
+                            + expected.length);
+        }
+        for (int i = 0; i < actual.length; i++) {
+            if (Math.abs(actual[i] - expected[i]) > TOLERANCE * Math
+                    .max(1.0, Math.abs(expected[i]))) {
+                throw new IllegalStateException(
+                        "Different " + name + " at " + i + ": " + actual[i] + ", "
+                                + expected[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public MACE flatIteration()
+    {
+        if (variational) {
+            mace.variationalMStep();
+        }
+        else {
+            mace.MStep(0.01);
+        }
+        mace.EStep(NO_CONTROLS);
+        return mace;
+    }
+
+    @Benchmark
+    public LegacyMACE legacyIteration()
+    {
+        if (variational) {
+            legacyMACE.variationalMStep();
+        }
+        else {
+            legacyMACE.MStep(0.01);
+        }
+        legacyMACE.EStep(NO_CONTROLS);
+        return legacyMACE;
+    }
+}
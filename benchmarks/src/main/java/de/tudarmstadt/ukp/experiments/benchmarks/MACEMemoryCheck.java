@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.pipeline.gold.AnnotationMatrix;
+import de.tudarmstadt.ukp.experiments.pipeline.gold.MACE;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Memory check of {@link MACE} on a large sparse input, by default 5M annotations (1M items,
+ * 10k annotators, 2 labels, 5 annotations per item) with 2 restarts of 3 iterations. Run it
+ * with a small heap, e.g. {@code -Xmx200m}: the annotations take about 45 MB and each
+ * restart about 20 MB, so the check fails with an {@link OutOfMemoryError} if the memory of
+ * a restart grows beyond its parameters and marginals (e.g. with counts for every chunk of
+ * the E-step, or when all restarts are kept for the screening).
+ * <p>
+ * The input is given by system properties {@code memory.items}, {@code memory.annotators},
+ * {@code memory.labels} and {@code memory.redundancy}; the run by {@code memory.restarts},
+ * {@code memory.iterations}, {@code memory.threads} and {@code memory.screening}
+ * (iterations, see {@link MACE#setRestartScreening(int, double)}; 0 for none).
+ *
+ * @author Ivan Habernal
+ */
+public class MACEMemoryCheck
+{
+    public static void main(String[] args)
+    {
+        int items = Integer.getInteger("memory.items", 1000000);
+        int annotators = Integer.getInteger("memory.annotators", 10000);
+        int labels = Integer.getInteger("memory.labels", 2);
+        int redundancy = Integer.getInteger("memory.redundancy", 5);
+        int restarts = Integer.getInteger("memory.restarts", 2);
+        int iterations = Integer.getInteger("memory.iterations", 3);
+        int threads = Integer.getInteger("memory.threads", 1);
+        int screening = Integer.getInteger("memory.screening", 0);
+
+        AnnotationMatrix data = SyntheticData
+                .maceMatrix(items, annotators, redundancy, labels, 0);
+
+        System.gc();
+        long dataHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+
+        MACE mace = new MACE(data);
+        mace.setSeed(0);
+        if (screening > 0) {
+            mace.setRestartScreening(screening, 0.01);
+        }
+
+        // MACE prints its settings and progress
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+            }
+        }));
+        long start = System.nanoTime();
+        try {
+            mace.run(iterations, restarts, threads);
+        }
+        finally {
+            System.setOut(out);
+        }
+        long time = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        System.out.println(String.format(Locale.ENGLISH,
+                "annotations: %d, restarts: %d, iterations: %d, time: %.0f ms, "
+                        + "data heap: %.1f MB, peak heap: %.1f MB, max heap: %.1f MB",
+                data.size(), restarts, iterations, time / 1e6, dataHeap / 1048576.0,
+                peakHeap / 1048576.0, Runtime.getRuntime().maxMemory() / 1048576.0));
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.pipeline.gold.AnnotationMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic data for the benchmarks, so they do not depend on the size of the
+ * real corpus and can be scaled beyond it
+ *
+ * @author Ivan Habernal
+ */
+public class SyntheticData
+{
+    private static final String[] VOCABULARY = new String[] { "the", "a", "is", "not", "women",
+            "scholarships", "would", "give", "chance", "study", "home", "education", "good",
+            "bad", "people", "should", "government", "money", "school", "children", "law",
+            "because", "they", "it", "can", "more", "less", "public", "health", "work", "right",
+            "free", "choice", "society", "pay", "tax", "vote", "young", "old", "city" };
+
+    /**
+     * Header of the TSV files with instances
+     */
+    public static final String TSV_HEADER = "#id\twarrant0\twarrant1\tcorrectLabelW0orW1\treason"
+            + "\tclaim\tdebateTitle\tdebateInfo";
+
+    public static String sentence(Random random, int minWords, int maxWords)
+    {
+        int length = minWords + random.nextInt(maxWords - minWords + 1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Lines in the format of the train/dev/test TSV files (without header); about 20
+     * instances share one debate, like in the real data
+     *
+     * @param size number of instances
+     * @param seed random seed
+     * @return lines
+     */
+    public static List<String> instanceLines(int size, long seed)
+    {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            int debate = i / 20;
+            result.add(String.join("\t", (1000000 + i) + "_" + debate + "_A" + i,
+                    sentence(random, 5, 12), sentence(random, 5, 12),
+                    String.valueOf(random.nextInt(2)), sentence(random, 8, 25),
+                    sentence(random, 4, 8), "Debate " + debate,
+                    sentence(new Random(debate), 15, 30)));
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes a TSV file with instances
+     *
+     * @param file file
+     * @param size number of instances
+     * @param seed random seed
+     * @throws IOException I/O exception
+     */
+    public static void writeInstances(File file, int size, long seed)
+            throws IOException
+    {
+        try (PrintWriter pw = new PrintWriter(file, "utf-8")) {
+            pw.println(TSV_HEADER);
+            for (String line : instanceLines(size, seed)) {
+                pw.println(line);
+            }
+        }
+    }
+
+    /**
+     * Writes a MACE input CSV: one item per line, one column per annotator, empty cells for
+     * annotators who did not label the item. Each annotator has a competence from 0.3 to 1.0
+     * and otherwise labels at random.
+     *
+     * @param file              file
+     * @param items             number of items
+     * @param annotators        number of annotators
+     * @param labelsPerItem     number of annotations per item
+     * @param numberOfLabels    number of distinct labels
+     * @param seed              random seed
+     * @throws IOException I/O exception
+     */
+    public static void writeMACEInput(File file, int items, int annotators, int labelsPerItem,
+            int numberOfLabels, long seed)
+            throws IOException
+    {
+        if (labelsPerItem > annotators) {
+            throw new IllegalArgumentException("Invalid argument: " + labelsPerItem);
+        }
+
+        Random random = new Random(seed);
+        double[] competence = new double[annotators];
+        for (int a = 0; a < annotators; a++) {
+            competence[a] = 0.3 + 0.7 * random.nextDouble();
+        }
+
+        try (PrintWriter pw = new PrintWriter(file, "utf-8")) {
+            String[] row = new String[annotators];
+            for (int i = 0; i < items; i++) {
+                int gold = random.nextInt(numberOfLabels);
+
+                Arrays.fill(row, "");
+                int first = random.nextInt(annotators);
+                for (int j = 0; j < labelsPerItem; j++) {
+                    int a = (first + j) % annotators;
+                    int label = random.nextDouble() < competence[a] ?
+                            gold :
+                            random.nextInt(numberOfLabels);
+                    row[a] = "l" + label;
+                }
+
+                pw.println(String.join(",", row));
+            }
+        }
+    }
+
+    /**
+     * The annotations of {@link #writeMACEInput(File, int, int, int, int, long)} as a matrix,
+     * without the CSV, which would take about 10 GB for a million items and ten thousand
+     * annotators
+     *
+     * @param items          number of items
+     * @param annotators     number of annotators
+     * @param labelsPerItem  number of annotations per item
+     * @param numberOfLabels number of distinct labels
+     * @param seed           random seed
+     * @return annotations
+     */
+    public static AnnotationMatrix maceMatrix(int items, int annotators, int labelsPerItem,
+            int numberOfLabels, long seed)
+    {
+        if (labelsPerItem > annotators) {
+            throw new IllegalArgumentException("Invalid argument: " + labelsPerItem);
+        }
+
+        Random random = new Random(seed);
+        double[] competence = new double[annotators];
+        for (int a = 0; a < annotators; a++) {
+            competence[a] = 0.3 + 0.7 * random.nextDouble();
+        }
+
+        String[] labelNames = new String[numberOfLabels];
+        for (int l = 0; l < numberOfLabels; l++) {
+            labelNames[l] = "l" + l;
+        }
+
+        AnnotationMatrix.Builder builder = new AnnotationMatrix.Builder(annotators);
+        for (int i = 0; i < items; i++) {
+            int gold = random.nextInt(numberOfLabels);
+
+            builder.addItem();
+            int first = random.nextInt(annotators);
+            for (int j = 0; j < labelsPerItem; j++) {
+                int a = (first + j) % annotators;
+                int label = random.nextDouble() < competence[a] ?
+                        gold :
+                        random.nextInt(numberOfLabels);
+                builder.setLabel(a, labelNames[label]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes a file in the format of the MTurk command-line tools output (tab-separated,
+     * quoted, with one hit per row)
+     *
+     * @param file        file
+     * @param assignments number of rows (assignments)
+     * @param seed        random seed
+     * @throws IOException I/O exception
+     */
+    public static void writeMTurkOutput(File file, int assignments, long seed)
+            throws IOException
+    {
+        Random random = new Random(seed);
+        String[] columns = new String[] { "hitid", "hittypeid", "title", "description",
+                "keywords", "reward", "creationtime", "assignments", "numavailable",
+                "numpending", "numcomplete", "hitstatus", "reviewstatus", "annotation",
+                "assignmentduration", "autoapprovaldelay", "hitlifetime", "viewhit",
+                "assignmentid", "workerid", "assignmentstatus", "autoapprovaltime",
+                "assignmentaccepttime", "assignmentsubmittime", "assignmentapprovaltime",
+                "assignmentrejecttime", "deadline", "feedback", "reject", "Answer.arg0",
+                "Answer.arg1", "Answer.arg2", "Answer.comment" };
+
+        try (PrintWriter pw = new PrintWriter(file, "utf-8")) {
+            pw.println(quoted(columns));
+
+            String[] row = new String[columns.length];
+            for (int i = 0; i < assignments; i++) {
+                for (int c = 0; c < columns.length; c++) {
+                    row[c] = sentence(random, 1, 4);
+                }
+                row[0] = "HIT" + (i / 5);
+                row[1] = "TYPE0";
+                row[18] = "ASSIGNMENT" + i;
+                row[19] = "WORKER" + random.nextInt(100);
+                row[20] = "Approved";
+                // answers in MTurk output may span several lines
+                row[columns.length - 1] = sentence(random, 5, 20) + "\n" + sentence(random, 5,
+                        20);
+
+                pw.println(quoted(row));
+            }
+        }
+    }
+
+    private static String quoted(String[] cells)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                sb.append('\t');
+            }
+            sb.append('"').append(cells[i]).append('"');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.argumentation.experiments.VectorIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 query latency of the vector index on random normalized 300-dimensional vectors;
+ * LSH uses 8 tables with about 64 vectors per bucket
+ *
+ * @author Ivan Habernal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class VectorIndexBenchmark
+{
+    private static final int DIMENSION = 300;
+    private static final int K = 10;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean lsh;
+
+    private VectorIndex index;
+
+    private float[][] queries;
+
+    private int query;
+
+    private final int[] ids = new int[K];
+
+    private final float[] scores = new float[K];
+
+    @Setup
+    public void setUp()
+    {
+        int lshBits = Math.max(1, 31 - Integer.numberOfLeadingZeros(size / 64));
+        index = lsh ? new VectorIndex(DIMENSION, 8, lshBits, 0) : new VectorIndex(DIMENSION);
+
+        Random random = new Random(0);
+        for (int i = 0; i < size; i++) {
+            index.add(randomVector(random));
+        }
+        index.build();
+
+        queries = new float[1024][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = randomVector(random);
+        }
+    }
+
+    static float[] randomVector(Random random)
+    {
+        float[] result = new float[DIMENSION];
+        double norm = 0;
+        for (int d = 0; d < DIMENSION; d++) {
+            result[d] = (float) random.nextGaussian();
+            norm += result[d] * result[d];
+        }
+        for (int d = 0; d < DIMENSION; d++) {
+            result[d] /= Math.sqrt(norm);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int search()
+    {
+        query = (query + 1) % queries.length;
+        return index.search(queries[query], K, ids, scores);
+    }
+}
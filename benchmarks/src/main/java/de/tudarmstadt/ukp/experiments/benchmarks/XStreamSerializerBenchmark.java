@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.benchmarks;
+
+import de.tudarmstadt.ukp.experiments.pipeline.datamodel.DebateMetaData;
+import de.tudarmstadt.ukp.experiments.pipeline.datamodel.StandaloneArgument;
+import de.tudarmstadt.ukp.experiments.pipeline.datamodel.XStreamSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deserialization of argument lists from (gzipped) XML, as used by all the pipeline steps
+ *
+ * @author Ivan Habernal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XStreamSerializerBenchmark
+{
+    @Param({ "100", "1000", "10000" })
+    public int arguments;
+
+    @Param({ "false", "true" })
+    public boolean gzip;
+
+    private File file;
+
+    @Setup
+    public void setUp()
+            throws IOException
+    {
+        Random random = new Random(0);
+        List<StandaloneArgument> list = new ArrayList<>(arguments);
+        for (int i = 0; i < arguments; i++) {
+            DebateMetaData metaData = new DebateMetaData();
+            metaData.setTitle("Debate " + (i / 20));
+            metaData.setDescription(SyntheticData.sentence(new Random(i / 20), 15, 30));
+            metaData.setUrl("http://www.nytimes.com/roomfordebate/2011/01/01/debate-" + (i / 20));
+
+            StandaloneArgument argument = new StandaloneArgument();
+            argument.setId("id" + i);
+            argument.setAuthor("author" + random.nextInt(1000));
+            argument.setText(SyntheticData.sentence(random, 50, 300));
+            argument.setStance("Stance 0");
+            argument.setStances(new TreeSet<>(Arrays.asList("Stance 0", "Stance 1")));
+            argument.setAnnotatedStance("Stance " + random.nextInt(2));
+            argument.setDebateMetaData(metaData);
+            list.add(argument);
+        }
+
+        file = File.createTempFile("arguments", gzip ? ".xml.gz" : ".xml");
+        OutputStream os = new FileOutputStream(file);
+        if (gzip) {
+            os = new GZIPOutputStream(os);
+        }
+        try (Writer writer = new OutputStreamWriter(os, "utf-8")) {
+            XStreamSerializer.getXStream().toXML(list, writer);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public List<StandaloneArgument> deserializeArgumentListFromXML()
+            throws IOException
+    {
+        return XStreamSerializer.deserializeArgumentListFromXML(file);
+    }
+}
@@ -85,6 +85,9 @@ public class Step9aFinalDataProvider
         printToFile(train, new File(outputDirectory, "train-doubled.tsv"), false, true);
         printToFile(train, new File(outputDirectory, "train-w-swap.tsv"), true, false);
         printToFile(train, new File(outputDirectory, "train-w-swap-doubled.tsv"), true, true);
+        // the augmented variants above can be created lazily from train.tsv and these pairs
+        // (AugmentedTrainingData in the experiments module)
+        printOpposingClaimsToFile(train, new File(outputDirectory, "train-opposing-claims.tsv"));
         printToFile(dev, new File(outputDirectory, "dev.tsv"), false, false);
         printToFile(test, new File(outputDirectory, "test.tsv"), false, false);
     }
@@ -185,6 +188,37 @@ public class Step9aFinalDataProvider
         IOUtils.closeQuietly(pw);
     }
 
+    /**
+     * Writes the annotated stance and the opposing stance of each debate, sorted, in UTF-8.
+     * Line format:
+     * <pre>
+     *     debateTitle claim opposingClaim
+     * </pre>
+     *
+     * @param collection collection
+     * @param outputFile output file
+     * @throws IOException exception
+     */
+    public static void printOpposingClaimsToFile(
+            Collection<ReasonClaimWarrantContainer> collection, File outputFile)
+            throws IOException
+    {
+        SortedMap<String, String> lines = new TreeMap<>();
+        for (ReasonClaimWarrantContainer container : collection) {
+            String key = container.getDebateMetaData().getTitle() + "\t" + container
+                    .getAnnotatedStance();
+            lines.put(key, container.getStanceOpposingToAnnotatedStance());
+        }
+
+        PrintWriter pw = new PrintWriter(outputFile, "utf-8");
+        pw.println("#debateTitle\tclaim\topposingClaim");
+        for (Map.Entry<String, String> entry : lines.entrySet()) {
+            pw.printf(Locale.ENGLISH, "%s\t%s%n", entry.getKey(), entry.getValue());
+        }
+
+        IOUtils.closeQuietly(pw);
+    }
+
     static void printEntry(PrintWriter pw, String reasonClaimWarrantId, String w0, String w1,
             Integer correctLabelW0orW1, String reasonGist, String annotatedStance, String title,
             String description)
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.pipeline.gold;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sparse items x annotators matrix of labels for {@link MACE} in the compressed sparse row
+ * format: the annotations of item {@code d} are at positions
+ * {@code itemOffsets[d]..itemOffsets[d + 1] - 1} of the {@code annotators} and
+ * {@code labels} arrays, sorted by annotator. Only the given annotations are stored (three
+ * ints each), so the memory does not depend on the number of annotators per item.
+ * <p>
+ * Labels are strings mapped to ids in the order of their first occurrence (items in order,
+ * annotations by annotator), the same as in the CSV input of MACE.
+ *
+ * @author Ivan Habernal
+ */
+public class AnnotationMatrix
+{
+    private final int numAnnotators;
+    private final int[] itemOffsets;
+    private final int[] annotators;
+    private final int[] labels;
+    private final List<String> labelNames;
+    private final Map<String, Integer> labelIds;
+
+    private AnnotationMatrix(Builder builder)
+    {
+        int size = builder.itemOffsets[builder.numItems];
+        this.numAnnotators = builder.numAnnotators;
+        this.itemOffsets = Arrays.copyOf(builder.itemOffsets, builder.numItems + 1);
+        this.annotators = Arrays.copyOf(builder.annotators, size);
+        this.labels = Arrays.copyOf(builder.labels, size);
+        this.labelNames = Collections.unmodifiableList(new ArrayList<>(builder.labelNames));
+        this.labelIds = new HashMap<>(builder.labelIds);
+    }
+
+    public int getNumberOfItems()
+    {
+        return itemOffsets.length - 1;
+    }
+
+    public int getNumberOfAnnotators()
+    {
+        return numAnnotators;
+    }
+
+    public int getNumberOfLabels()
+    {
+        return labelNames.size();
+    }
+
+    /**
+     * @return total number of annotations
+     */
+    public int size()
+    {
+        return annotators.length;
+    }
+
+    /**
+     * @param item item
+     * @return position of the first annotation of the item
+     */
+    public int getItemStart(int item)
+    {
+        return itemOffsets[item];
+    }
+
+    /**
+     * @param item item
+     * @return position after the last annotation of the item
+     */
+    public int getItemEnd(int item)
+    {
+        return itemOffsets[item + 1];
+    }
+
+    /**
+     * @param position position of an annotation
+     * @return annotator
+     */
+    public int getAnnotator(int position)
+    {
+        return annotators[position];
+    }
+
+    /**
+     * @param position position of an annotation
+     * @return label id
+     */
+    public int getLabel(int position)
+    {
+        return labels[position];
+    }
+
+    /**
+     * @param label label id
+     * @return label
+     */
+    public String getLabelName(int label)
+    {
+        return labelNames.get(label);
+    }
+
+    /**
+     * @return all labels, indexed by their ids
+     */
+    public List<String> getLabelNames()
+    {
+        return labelNames;
+    }
+
+    /**
+     * @param labelName label
+     * @return label id or -1 if no item has this label
+     */
+    public int getLabelId(String labelName)
+    {
+        Integer result = labelIds.get(labelName);
+        return result != null ? result : -1;
+    }
+
+    // direct access for the EM loop in MACE; not to be modified
+
+    int[] getItemOffsets()
+    {
+        return itemOffsets;
+    }
+
+    int[] getAnnotators()
+    {
+        return annotators;
+    }
+
+    int[] getLabels()
+    {
+        return labels;
+    }
+
+    /**
+     * Reads the CSV input of MACE: one item per line, one comma-separated value per
+     * annotator, empty values for annotators who did not label the item
+     *
+     * @param reader reader
+     * @return matrix
+     * @throws IOException if lines have different numbers of annotators
+     */
+    public static AnnotationMatrix readCSV(BufferedReader reader)
+            throws IOException
+    {
+        Builder builder = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            int annotatorsOnLine = 1;
+            for (int i = 0; i < line.length(); i++) {
+                if (line.charAt(i) == ',') {
+                    annotatorsOnLine++;
+                }
+            }
+
+            if (builder == null) {
+                builder = new Builder(annotatorsOnLine);
+            }
+            else if (annotatorsOnLine != builder.numAnnotators) {
+                throw new IOException("number of annotations in line " + lineNumber
+                        + " differs from previous line!");
+            }
+
+            builder.addItem();
+            int annotator = 0;
+            int start = 0;
+            while (start <= line.length()) {
+                int end = line.indexOf(',', start);
+                if (end < 0) {
+                    end = line.length();
+                }
+                if (end > start) {
+                    builder.setLabel(annotator, line.substring(start, end));
+                }
+                annotator++;
+                start = end + 1;
+            }
+        }
+
+        return builder != null ? builder.build() : new Builder(0).build();
+    }
+
+    /**
+     * Writes the matrix in the CSV input format of MACE
+     *
+     * @param pw writer
+     */
+    public void writeCSV(PrintWriter pw)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int d = 0; d < getNumberOfItems(); d++) {
+            sb.setLength(0);
+            int position = itemOffsets[d];
+            for (int a = 0; a < numAnnotators; a++) {
+                if (a > 0) {
+                    sb.append(',');
+                }
+                if (position < itemOffsets[d + 1] && annotators[position] == a) {
+                    sb.append(labelNames.get(labels[position]));
+                    position++;
+                }
+            }
+            pw.println(sb);
+        }
+    }
+
+    /**
+     * Builds the matrix item by item; the annotations of an item may be set in any order
+     */
+    public static class Builder
+    {
+        private final int numAnnotators;
+        private int numItems;
+        private int[] itemOffsets = new int[1024];
+        private int[] annotators = new int[1024];
+        private int[] labels = new int[1024];
+        private final List<String> labelNames = new ArrayList<>();
+        private final Map<String, Integer> labelIds = new HashMap<>();
+
+        // annotations of the current item, ordered and mapped to ids when it is finished
+        private final List<String> pendingLabels = new ArrayList<>();
+        private int[] pendingAnnotators = new int[16];
+
+        /**
+         * @param numAnnotators number of annotators (columns)
+         */
+        public Builder(int numAnnotators)
+        {
+            if (numAnnotators < 0) {
+                throw new IllegalArgumentException("Invalid argument: " + numAnnotators);
+            }
+            this.numAnnotators = numAnnotators;
+        }
+
+        /**
+         * Starts a new item
+         *
+         * @return this builder
+         */
+        public Builder addItem()
+        {
+            finishItem();
+            numItems++;
+            if (numItems >= itemOffsets.length) {
+                itemOffsets = Arrays.copyOf(itemOffsets, itemOffsets.length * 2);
+            }
+            itemOffsets[numItems] = itemOffsets[numItems - 1];
+            return this;
+        }
+
+        /**
+         * Sets the label of the annotator for the current item; a label set before for the
+         * same annotator and item is replaced
+         *
+         * @param annotator annotator (column)
+         * @param label     label
+         * @return this builder
+         */
+        public Builder setLabel(int annotator, String label)
+        {
+            if (numItems == 0) {
+                throw new IllegalStateException("No item added");
+            }
+            if (annotator < 0 || annotator >= numAnnotators) {
+                throw new IllegalArgumentException("Invalid argument: annotator " + annotator);
+            }
+            if (label == null || label.isEmpty()) {
+                throw new IllegalArgumentException("Invalid argument: empty label");
+            }
+
+            for (int i = 0; i < pendingLabels.size(); i++) {
+                if (pendingAnnotators[i] == annotator) {
+                    pendingLabels.set(i, label);
+                    return this;
+                }
+            }
+
+            if (pendingLabels.size() == pendingAnnotators.length) {
+                pendingAnnotators = Arrays.copyOf(pendingAnnotators, pendingAnnotators.length * 2);
+            }
+            pendingAnnotators[pendingLabels.size()] = annotator;
+            pendingLabels.add(label);
+            return this;
+        }
+
+        /**
+         * Moves the annotations of the current item, sorted by annotator, to the arrays
+         */
+        private void finishItem()
+        {
+            int count = pendingLabels.size();
+            if (count == 0) {
+                return;
+            }
+
+            int start = itemOffsets[numItems];
+            if (start + count > annotators.length) {
+                int capacity = Math.max(annotators.length * 2, start + count);
+                annotators = Arrays.copyOf(annotators, capacity);
+                labels = Arrays.copyOf(labels, capacity);
+            }
+
+            // items have few annotations, insertion sort by annotator
+            for (int i = 0; i < count; i++) {
+                int annotator = pendingAnnotators[i];
+                String label = pendingLabels.get(i);
+                int j = i;
+                while (j > 0 && pendingAnnotators[j - 1] > annotator) {
+                    pendingAnnotators[j] = pendingAnnotators[j - 1];
+                    pendingLabels.set(j, pendingLabels.get(j - 1));
+                    j--;
+                }
+                pendingAnnotators[j] = annotator;
+                pendingLabels.set(j, label);
+            }
+
+            for (int i = 0; i < count; i++) {
+                String label = pendingLabels.get(i);
+                Integer labelId = labelIds.get(label);
+                if (labelId == null) {
+                    labelId = labelNames.size();
+                    labelIds.put(label, labelId);
+                    labelNames.add(label);
+                }
+
+                annotators[start + i] = pendingAnnotators[i];
+                labels[start + i] = labelId;
+            }
+
+            itemOffsets[numItems] = start + count;
+            pendingLabels.clear();
+        }
+
+        public AnnotationMatrix build()
+        {
+            finishItem();
+            return new AnnotationMatrix(this);
+        }
+    }
+}
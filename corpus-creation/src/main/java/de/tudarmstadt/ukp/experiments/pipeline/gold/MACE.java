@@ -46,6 +46,11 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MACE: Multi-Annotator Competence Estimation
@@ -63,8 +68,14 @@ public class MACE
     private static final int DEFAULT_RR = 10;
     private static final int DEFAULT_ITERATIONS = 50;
     private static final double DEFAULT_NOISE = 0.5;
-    private static final double DEFAULT_ALPHA = 0.5;
-    private static final double DEFAULT_BETA = 0.5;
+    public static final double DEFAULT_ALPHA = 0.5;
+    public static final double DEFAULT_BETA = 0.5;
+    private static final long DEFAULT_SEED = 0;
+
+    // minimal number of instances of an E-step chunk and maximal number of chunks, which
+    // bounds the memory of their counts (see Model.EStep)
+    private static final int CHUNK_SIZE = 2048;
+    private static final int MAX_CHUNKS = 16;
 
     // fields
     private int numInstances;
@@ -72,36 +83,39 @@ public class MACE
     private int numLabels;
 
     // training data
-    // [d][ai]
-    private int[][] whoLabeled;
-    // [d][ai]
-    private int[][] labels;
+    private AnnotationMatrix data;
+
+    // current model (the best one after run())
+    private Model model;
 
-    // parameters
-    // [a][2]
-    private double[][] thetas;
-    // [d][l]
-    private double[][] strategies;
+    // priors, the same for each annotator
+    // [k]
+    private double[] thetaPriors;    // this controls how many of the annotators are actually good
 
-    // expected counts
-    // [d][l]
-    private double[][] goldLabelMarginals;
-    // [a][l]
-    private double[][] strategyExpectedCounts;
-    // [a][2]
-    private double[][] knowingExpectedCounts;
+    // [l]
+    private double[] strategyPriors;    // for now, these are 10.0
 
-    // priors
-    private double[][] thetaPriors;    // this controls how many of the annotators are actually good
+    // controls of the last EStep(Map) call, converted to an array
+    private Map<Integer, Integer> lastControls;
+    private int[] lastControlArray;
 
-    private double[][] strategyPriors;    // for now, these are 1.0
+    // seed of the random initialization; restarts derive their seeds from it
+    private long seed = DEFAULT_SEED;
 
-    private double logMarginalLikelhood;
+    // early stopping: a restart stops once the relative change of the log marginal likelihood
+    // stayed within the tolerance for patience iterations (0.0 runs all iterations)
+    private double convergenceTolerance = 0.0;
+    private int convergencePatience = 1;
 
-    //hash stuff
-    private Map<String, Integer> string2Int;
-    private List<String> int2String;
-    private int hashCounter;
+    // restarts whose log marginal likelihood after the screening iterations is worse than the
+    // best one by more than the margin (relative) are abandoned (0 iterations keeps all)
+    private int screeningIterations = 0;
+    private double screeningMargin = 0.0;
+
+    // iterations of all restarts in the last run, and how many of numRestarts * numIters
+    // were skipped
+    private long iterationsRun;
+    private long iterationsSaved;
 
     public void setDebug(boolean debug)
     {
@@ -110,6 +124,380 @@ public class MACE
 
     private boolean debug = false;
 
+    /**
+     * Parameters and expected counts of a single EM run; each restart has its own, so
+     * restarts can run in parallel. All matrices are flat row-major arrays allocated once;
+     * the E-step and M-step update them in place and allocate nothing.
+     */
+    private class Model
+    {
+        // parameters
+        // [a * 2 + k]
+        private final double[] thetas = new double[numAnnotators * 2];
+        // [a * numLabels + l]
+        private final double[] strategies = new double[numAnnotators * numLabels];
+
+        // thetas[a][0] * strategies[a][l] (annotator guesses label l), precomputed for the
+        // current parameters before each E-step
+        // [a * numLabels + l]
+        private final double[] guessingProbabilities = new double[numAnnotators * numLabels];
+
+        // expected counts
+        // [d * numLabels + l]
+        private final double[] goldLabelMarginals = new double[numInstances * numLabels];
+        // [a * numLabels + l]
+        private final double[] strategyExpectedCounts = new double[numAnnotators * numLabels];
+        // [a * 2 + k]
+        private final double[] knowingExpectedCounts = new double[numAnnotators * 2];
+
+        private double logMarginalLikelhood;
+
+        // E-step over fixed chunks of instances, possibly in parallel in the pool
+        private final Chunk[] chunks = createChunks();
+        private ForkJoinPool pool;
+
+        // log marginal likelihood after each E-step of the EM iterations, [0] after the
+        // initial one
+        private double[] likelihoodTrace = new double[16];
+        private int traceLength;
+        private int stableIterations;
+        private boolean converged;
+
+        /**
+         * initialize model parameters randomly
+         */
+        private Model(double initNoise, long seed)
+        {
+            Random rand = new Random(seed);
+            Arrays.fill(thetas, 1.0);
+            Arrays.fill(strategies, 1.0);
+            for (int a = 0; a < numAnnotators; ++a) {
+                thetas[a * 2] += initNoise * rand.nextDouble();
+                thetas[a * 2 + 1] += initNoise * rand.nextDouble();
+                for (int l = 0; l < numLabels; ++l) {
+                    strategies[a * numLabels + l] += initNoise * rand.nextDouble();
+                }
+            }
+            normalizeRowsInPlace(thetas, thetas, 2, 0.0);
+            normalizeRowsInPlace(strategies, strategies, numLabels, 0.0);
+        }
+
+        /**
+         * initialize model parameters from the trained model of a previous run (warm start)
+         *
+         * @param previous           previous run
+         * @param previousAnnotators index of each annotator in the previous run, or -1
+         * @param previousLabels     id of each label in the previous run, or -1
+         */
+        private Model(MACE previous, int[] previousAnnotators, int[] previousLabels)
+        {
+            Model previousModel = previous.model;
+            int previousNumLabels = previous.numLabels;
+
+            // new annotators start with the mean competence of the known ones
+            double meanKnowing = 0.5;
+            if (previous.numAnnotators > 0) {
+                meanKnowing = 0.0;
+                for (int a = 0; a < previous.numAnnotators; ++a) {
+                    meanKnowing += previousModel.thetas[a * 2 + 1];
+                }
+                meanKnowing /= previous.numAnnotators;
+            }
+
+            for (int a = 0; a < numAnnotators; ++a) {
+                int pa = previousAnnotators[a];
+                if (pa < 0) {
+                    thetas[a * 2] = 1.0 - meanKnowing;
+                    thetas[a * 2 + 1] = meanKnowing;
+                }
+                else {
+                    thetas[a * 2] = previousModel.thetas[pa * 2];
+                    thetas[a * 2 + 1] = previousModel.thetas[pa * 2 + 1];
+                }
+
+                // uniform strategy for new annotators and new labels
+                for (int l = 0; l < numLabels; ++l) {
+                    int pl = previousLabels[l];
+                    strategies[a * numLabels + l] = pa >= 0 && pl >= 0 ?
+                            previousModel.strategies[pa * previousNumLabels + pl] :
+                            1.0 / numLabels;
+                }
+            }
+            normalizeRowsInPlace(strategies, strategies, numLabels, 0.0);
+        }
+
+        /**
+         * compute expected counts when control items are provided; the instances are split
+         * into at most {@link #MAX_CHUNKS} chunks of at least {@link #CHUNK_SIZE} which run in
+         * parallel if the model has a pool. Each chunk accumulates its own counts, which are
+         * summed up in the order of the chunks, so the result does not depend on the number of
+         * threads.
+         *
+         * @param controls control label of each instance, or -1
+         */
+        private void EStep(int[] controls)
+        {
+            for (int a = 0; a < numAnnotators; ++a) {
+                for (int l = 0; l < numLabels; ++l) {
+                    guessingProbabilities[a * numLabels + l] =
+                            thetas[a * 2] * strategies[a * numLabels + l];
+                }
+            }
+
+            // a single chunk accumulates directly into the counts of the model
+            if (chunks.length == 1) {
+                logMarginalLikelhood = EStepChunk(0, numInstances, controls,
+                        strategyExpectedCounts, knowingExpectedCounts);
+                return;
+            }
+
+            for (Chunk chunk : chunks) {
+                chunk.reinitialize();
+                chunk.controls = controls;
+            }
+            if (pool == null || pool.getParallelism() == 1) {
+                for (Chunk chunk : chunks) {
+                    chunk.compute();
+                }
+            }
+            else if (ForkJoinTask.getPool() == pool) {
+                // called from a restart running in the pool
+                ForkJoinTask.invokeAll(chunks);
+            }
+            else {
+                pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(chunks)));
+            }
+
+            // reduce in fixed order
+            logMarginalLikelhood = 0.0;
+            Arrays.fill(knowingExpectedCounts, 0.0);
+            Arrays.fill(strategyExpectedCounts, 0.0);
+            for (Chunk chunk : chunks) {
+                logMarginalLikelhood += chunk.logMarginalLikelihood;
+                for (int i = 0; i < strategyExpectedCounts.length; i++) {
+                    strategyExpectedCounts[i] += chunk.strategyExpectedCounts[i];
+                }
+                for (int i = 0; i < knowingExpectedCounts.length; i++) {
+                    knowingExpectedCounts[i] += chunk.knowingExpectedCounts[i];
+                }
+            }
+        }
+
+        /**
+         * E-step over the given instances; sets their gold label marginals and accumulates
+         * the expected counts into the given (reset) arrays
+         *
+         * @return log marginal likelihood of the instances
+         */
+        private double EStepChunk(int fromInstance, int toInstance, int[] controls,
+                double[] strategyExpectedCounts, double[] knowingExpectedCounts)
+        {
+
+            // reset counts
+
+            Arrays.fill(goldLabelMarginals, fromInstance * numLabels, toInstance * numLabels,
+                    0.0);
+            Arrays.fill(knowingExpectedCounts, 0.0);
+            Arrays.fill(strategyExpectedCounts, 0.0);
+
+            // compute marginals
+
+            double result = 0.0;
+            double prior = 1.0 / numLabels;
+
+            int[] itemOffsets = data.getItemOffsets();
+            int[] annotators = data.getAnnotators();
+            int[] labels = data.getLabels();
+
+            for (int d = fromInstance; d < toInstance; ++d) {
+                int from = itemOffsets[d];
+                int to = itemOffsets[d + 1];
+                int control = controls[d];
+                int marginalsOffset = d * numLabels;
+                double instanceMarginal = 0.0;
+
+                for (int l = 0; l < numLabels; ++l) {
+                    double goldLabelMarginal = prior;
+                    for (int ai = from; ai < to; ++ai) {
+                        int a = annotators[ai];
+                        int label = labels[ai];
+
+                        goldLabelMarginal *= guessingProbabilities[a * numLabels + label] + (
+                                l == label ? thetas[a * 2 + 1] : 0.0);
+                    }
+
+                    if (control < 0 || l == control) {
+                        instanceMarginal += goldLabelMarginal;
+                        goldLabelMarginals[marginalsOffset + l] = goldLabelMarginal;
+                    }
+                }
+
+                result += Math.log(instanceMarginal);
+
+                for (int ai = from; ai < to; ++ai) {
+                    int a = annotators[ai];
+                    int label = labels[ai];
+                    double guessing = guessingProbabilities[a * numLabels + label];
+                    double knowing = thetas[a * 2 + 1];
+                    double strategyMarginal = 0.0;
+
+                    if (control >= 0) {
+                        if (label == control) {
+                            strategyMarginal += goldLabelMarginals[marginalsOffset + control] / (
+                                    guessing + knowing);
+                            strategyMarginal *= guessing;
+                            strategyExpectedCounts[a * numLabels + label] +=
+                                    strategyMarginal / instanceMarginal;
+                            knowingExpectedCounts[a * 2] += strategyMarginal / instanceMarginal;
+                            knowingExpectedCounts[a * 2 + 1] +=
+                                    (goldLabelMarginals[marginalsOffset + label] * knowing / (
+                                            guessing + knowing)) / instanceMarginal;
+                        }
+                        else {
+                            strategyExpectedCounts[a * numLabels + label] += 1.0;
+                            knowingExpectedCounts[a * 2] += 1.0;
+                        }
+                    }
+                    else {
+                        for (int l = 0; l < numLabels; ++l) {
+                            strategyMarginal += goldLabelMarginals[marginalsOffset + l] / (
+                                    guessing + (l == label ? knowing : 0.0));
+                        }
+                        strategyMarginal *= guessing;
+                        strategyExpectedCounts[a * numLabels + label] +=
+                                strategyMarginal / instanceMarginal;
+                        knowingExpectedCounts[a * 2] += strategyMarginal / instanceMarginal;
+                        knowingExpectedCounts[a * 2 + 1] +=
+                                (goldLabelMarginals[marginalsOffset + label] * knowing / (
+                                        guessing + knowing)) / instanceMarginal;
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        private Chunk[] createChunks()
+        {
+            // the chunks depend on the number of instances only
+            int chunkSize = Math.max(CHUNK_SIZE, (numInstances + MAX_CHUNKS - 1) / MAX_CHUNKS);
+            int numChunks = Math.max(1, (numInstances + chunkSize - 1) / chunkSize);
+            Chunk[] result = new Chunk[numChunks];
+            for (int c = 0; c < numChunks; c++) {
+                result[c] = new Chunk(c * chunkSize, Math.min(numInstances, (c + 1) * chunkSize),
+                        numChunks > 1);
+            }
+            return result;
+        }
+
+        /**
+         * E-step of a chunk of instances with its own expected counts
+         */
+        private class Chunk
+                extends RecursiveAction
+        {
+            private static final long serialVersionUID = 1L;
+
+            private final int fromInstance;
+            private final int toInstance;
+            private final double[] strategyExpectedCounts;
+            private final double[] knowingExpectedCounts;
+
+            private int[] controls;
+            private double logMarginalLikelihood;
+
+            private Chunk(int fromInstance, int toInstance, boolean ownCounts)
+            {
+                this.fromInstance = fromInstance;
+                this.toInstance = toInstance;
+                this.strategyExpectedCounts = ownCounts ?
+                        new double[numAnnotators * numLabels] :
+                        null;
+                this.knowingExpectedCounts = ownCounts ? new double[numAnnotators * 2] : null;
+            }
+
+            @Override
+            protected void compute()
+            {
+                logMarginalLikelihood = EStepChunk(fromInstance, toInstance, controls,
+                        strategyExpectedCounts, knowingExpectedCounts);
+            }
+        }
+
+        /**
+         * first E-step of a run
+         */
+        private void start(int[] controls)
+        {
+            traceLength = 0;
+            stableIterations = 0;
+            converged = false;
+
+            EStep(controls);
+            recordLikelihood();
+        }
+
+        /**
+         * EM iterations until the given number of iterations (since {@link #start(int[])}) or
+         * convergence
+         */
+        private void iterate(int numIters, double smoothing, boolean variational,
+                int[] controls)
+        {
+            while (getIterations() < numIters && !converged) {
+                if (variational)
+                    variationalMStep();
+                else
+                    MStep(smoothing);
+                EStep(controls);
+                recordLikelihood();
+            }
+        }
+
+        private int getIterations()
+        {
+            return traceLength - 1;
+        }
+
+        private void recordLikelihood()
+        {
+            if (traceLength == likelihoodTrace.length) {
+                likelihoodTrace = Arrays.copyOf(likelihoodTrace, traceLength * 2);
+            }
+            likelihoodTrace[traceLength++] = logMarginalLikelhood;
+
+            if (convergenceTolerance > 0.0 && traceLength > 1) {
+                double previous = likelihoodTrace[traceLength - 2];
+                if (Math.abs(logMarginalLikelhood - previous)
+                        <= convergenceTolerance * Math.abs(previous)) {
+                    converged = ++stableIterations >= convergencePatience;
+                }
+                else {
+                    stableIterations = 0;
+                }
+            }
+        }
+
+        /**
+         * normalize expected counts
+         */
+        private void MStep(double smoothing)
+        {
+            normalizeRowsInPlace(knowingExpectedCounts, thetas, 2, smoothing);
+            normalizeRowsInPlace(strategyExpectedCounts, strategies, numLabels, smoothing);
+        }
+
+        /**
+         * normalize using priors
+         */
+        private void variationalMStep()
+        {
+            variationalNormalizeRowsInPlace(knowingExpectedCounts, thetas, 2, thetaPriors);
+            variationalNormalizeRowsInPlace(strategyExpectedCounts, strategies, numLabels,
+                    strategyPriors);
+        }
+    }
+
     /**
      * Constructor
      *
@@ -119,50 +507,87 @@ public class MACE
     public MACE(String csvFile)
             throws IOException
     {
+        this(readFileData(csvFile));
+    }
 
-        numInstances = fileLineCount(csvFile);
-
-        labels = new int[numInstances][];
-        whoLabeled = new int[numInstances][];
-
-        // hash stuff
-        string2Int = new HashMap<>();
-        int2String = new ArrayList<>();
-        hashCounter = 0;
-
-        // read in CSV file to get all basic information
-        this.readFileData(csvFile);
+    /**
+     * Constructor
+     *
+     * @param data annotations
+     */
+    public MACE(AnnotationMatrix data)
+    {
+        this.data = data;
+        this.numInstances = data.getNumberOfItems();
+        this.numAnnotators = data.getNumberOfAnnotators();
+        this.numLabels = data.getNumberOfLabels();
 
-        //this.numAnnotators = annotatorNumber;
-        this.numLabels = int2String.size();
+        System.out.println(
+                "\nstats:\n\t" + numInstances + " instances,\n\t" + numLabels + " labels "
+                        + data.getLabelNames() + ",\n\t" + numAnnotators + " annotators,\n\t"
+                        + data.size() + " annotations\n");
+    }
 
-        this.goldLabelMarginals = new double[numInstances][numLabels];
-        this.strategyExpectedCounts = new double[numAnnotators][numLabels];
-        this.knowingExpectedCounts = new double[numAnnotators][2];
+    /**
+     * Sets the seed of the random initialization; restarts in {@link #run} use seeds derived
+     * from it, so the same seed gives the same result regardless of the number of threads
+     *
+     * @param seed seed
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
 
+    /**
+     * Stops the EM iterations of a restart early, once the relative change of the log
+     * marginal likelihood stayed within the tolerance for the given number of iterations
+     *
+     * @param tolerance relative tolerance; 0.0 always runs all iterations (default)
+     * @param patience  number of iterations (default 1)
+     */
+    public void setConvergence(double tolerance, int patience)
+    {
+        if (tolerance < 0.0) {
+            throw new IllegalArgumentException("tolerance less than 0.0");
+        }
+        if (patience < 1) {
+            throw new IllegalArgumentException("patience less than 1");
+        }
+        this.convergenceTolerance = tolerance;
+        this.convergencePatience = patience;
     }
 
     /**
-     * initialize model parameters randomly
+     * Abandons restarts that are clearly worse than the best one: all restarts first run the
+     * screening iterations, only those whose log marginal likelihood is within the relative
+     * margin of the best one continue. Unlike abandoning restarts while they run, this does
+     * not depend on the number of threads. Until the screening finished, only the models of
+     * the best restarts (as many as threads) are kept; the other restarts that continue are
+     * run again from their seed, which gives the same model but costs their screening
+     * iterations again.
+     *
+     * @param iterations screening iterations; 0 keeps all restarts (default)
+     * @param margin     relative margin, e.g., 0.01 keeps restarts at most 1% worse
      */
-    public void initialize(double initNoise)
+    public void setRestartScreening(int iterations, double margin)
     {
-        Random rand = new Random();
-        this.thetas = new double[numAnnotators][2];
-        this.strategies = new double[numAnnotators][numLabels];
-        for (int a = 0; a < numAnnotators; ++a) {
-            Arrays.fill(thetas[a], 1.0);
-            Arrays.fill(strategies[a], 1.0);
-            thetas[a][0] += initNoise * rand.nextDouble();
-            thetas[a][1] += initNoise * rand.nextDouble();
-            for (int l = 0; l < numLabels; ++l) {
-                strategies[a][l] += initNoise * rand.nextDouble();
-            }
+        if (iterations < 0) {
+            throw new IllegalArgumentException("screening iterations less than 0");
         }
-        normalizeInPlace(thetas, 0.0);
-        normalizeInPlace(strategies, 0.0);
+        if (margin < 0.0) {
+            throw new IllegalArgumentException("screening margin less than 0.0");
+        }
+        this.screeningIterations = iterations;
+        this.screeningMargin = margin;
+    }
 
-        //System.out.println(thetas[0][0] + " " + thetas[0][1]);
+    /**
+     * initialize model parameters randomly (using the seed)
+     */
+    public void initialize(double initNoise)
+    {
+        this.model = new Model(initNoise, seed);
     }
 
     /**
@@ -171,106 +596,74 @@ public class MACE
     public void initialize(double initNoise, double alpha, double beta)
     {
         this.initialize(initNoise);
-        this.thetaPriors = new double[numAnnotators][2];
-        this.strategyPriors = new double[numAnnotators][numLabels];
-        for (int a = 0; a < numAnnotators; ++a) {
-            thetaPriors[a][0] = alpha;
-            thetaPriors[a][1] = beta;
-            Arrays.fill(strategyPriors[a], 10.0);
-        }
+        this.initializePriors(alpha, beta);
     }
 
     /**
-     * compute expected counts when control items are provided
+     * initialize model parameters from the trained model of a previous run on a subset of
+     * this data, e.g., before a new batch of assignments arrived (warm start). Labels are
+     * matched by name; new annotators get the mean competence of the previous ones.
+     *
+     * @param previous           trained MACE
+     * @param previousAnnotators index of each annotator in the data of the previous run, or
+     *                           -1 for new annotators
      */
-    public void EStep(Map<Integer, Integer> controls)
+    public void initialize(MACE previous, int[] previousAnnotators)
     {
-
-        // reset counts
-
-        for (int d = 0; d < numInstances; ++d) {
-            for (int l = 0; l < numLabels; ++l) {
-                goldLabelMarginals[d][l] = 0.0;
-            }
+        if (previous.model == null) {
+            throw new IllegalStateException("Previous MACE has no model; run it first");
         }
-        for (int a = 0; a < numAnnotators; ++a) {
-            knowingExpectedCounts[a][0] = 0.0;
-            knowingExpectedCounts[a][1] = 0.0;
-            for (int l = 0; l < numLabels; ++l) {
-                strategyExpectedCounts[a][l] = 0.0;
+        if (previousAnnotators.length != numAnnotators) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: " + previousAnnotators.length + " annotators, expected "
+                            + numAnnotators);
+        }
+        for (int pa : previousAnnotators) {
+            if (pa >= previous.numAnnotators) {
+                throw new IllegalArgumentException("Invalid argument: annotator " + pa);
             }
         }
 
-        // compute marginals
-
-        logMarginalLikelhood = 0.0;
-
-        for (int d = 0; d < numInstances; ++d) {
-            double instanceMarginal = 0.0;
-
-            for (int l = 0; l < numLabels; ++l) {
-                double goldLabelMarginal = (1.0 / numLabels);
-                for (int ai = 0; ai < labels[d].length; ++ai) {
-                    int a = whoLabeled[d][ai];
-
-                    goldLabelMarginal *=
-                            thetas[a][0] * strategies[a][labels[d][ai]] + (l == labels[d][ai] ?
-                                    thetas[a][1] :
-                                    0.0);
-                }
-
-                if (!controls.containsKey(d) || (controls.containsKey(d) && l == controls.get(d))) {
-                    instanceMarginal += goldLabelMarginal;
-                    goldLabelMarginals[d][l] = goldLabelMarginal;
-                }
-            }
+        int[] previousLabels = new int[numLabels];
+        for (int l = 0; l < numLabels; ++l) {
+            previousLabels[l] = previous.data.getLabelId(data.getLabelName(l));
+        }
 
-            logMarginalLikelhood += Math.log(instanceMarginal);
+        this.model = new Model(previous, previousAnnotators, previousLabels);
+        this.convergenceTolerance = previous.convergenceTolerance;
+        this.convergencePatience = previous.convergencePatience;
+    }
 
-            for (int ai = 0; ai < labels[d].length; ++ai) {
-                int a = whoLabeled[d][ai];
-                double strategyMarginal = 0.0;
+    private void initializePriors(double alpha, double beta)
+    {
+        this.thetaPriors = new double[] { alpha, beta };
+        this.strategyPriors = new double[numLabels];
+        Arrays.fill(strategyPriors, 10.0);
+    }
 
-                if (controls.containsKey(d)) {
-                    if (labels[d][ai] == controls.get(d)) {
-                        {
-                            int l = controls.get(d);
-                            strategyMarginal += goldLabelMarginals[d][l] / (
-                                    thetas[a][0] * strategies[a][labels[d][ai]] + (
-                                            l == labels[d][ai] ? thetas[a][1] : 0.0));
-                        }
-                        strategyMarginal *= thetas[a][0] * strategies[a][labels[d][ai]];
-                        strategyExpectedCounts[a][labels[d][ai]] +=
-                                strategyMarginal / instanceMarginal;
-                        knowingExpectedCounts[a][0] += strategyMarginal / instanceMarginal;
-                        knowingExpectedCounts[a][1] +=
-                                (goldLabelMarginals[d][labels[d][ai]] * thetas[a][1] / (
-                                        thetas[a][0] * strategies[a][labels[d][ai]] + thetas[a][1]))
-                                        / instanceMarginal;
-                    }
-                    else {
-                        strategyExpectedCounts[a][labels[d][ai]] += 1.0;
-                        knowingExpectedCounts[a][0] += 1.0;
-                    }
-                }
-                else {
-                    for (int l = 0; l < numLabels; ++l) {
-                        strategyMarginal += goldLabelMarginals[d][l] / (
-                                thetas[a][0] * strategies[a][labels[d][ai]] + (l == labels[d][ai] ?
-                                        thetas[a][1] :
-                                        0.0));
-                    }
-                    strategyMarginal *= thetas[a][0] * strategies[a][labels[d][ai]];
-                    strategyExpectedCounts[a][labels[d][ai]] += strategyMarginal / instanceMarginal;
-                    knowingExpectedCounts[a][0] += strategyMarginal / instanceMarginal;
-                    knowingExpectedCounts[a][1] +=
-                            (goldLabelMarginals[d][labels[d][ai]] * thetas[a][1] / (
-                                    thetas[a][0] * strategies[a][labels[d][ai]] + thetas[a][1]))
-                                    / instanceMarginal;
-                }
-            }
+    /**
+     * @return control label of each instance, or -1 for instances without control
+     */
+    private int[] toControlArray(Map<Integer, Integer> controls)
+    {
+        int[] result = new int[numInstances];
+        Arrays.fill(result, -1);
+        for (Map.Entry<Integer, Integer> entry : controls.entrySet()) {
+            result[entry.getKey()] = entry.getValue();
         }
+        return result;
+    }
 
+    /**
+     * compute expected counts when control items are provided
+     */
+    public void EStep(Map<Integer, Integer> controls)
+    {
+        if (controls != lastControls) {
+            lastControlArray = toControlArray(controls);
+            lastControls = controls;
+        }
+        model.EStep(lastControlArray);
     }
 
     /**
@@ -278,8 +671,7 @@ public class MACE
      */
     public void MStep(double smoothing)
     {
-        thetas = normalize(knowingExpectedCounts, smoothing);
-        strategies = normalize(strategyExpectedCounts, smoothing);
+        model.MStep(smoothing);
     }
 
     /**
@@ -287,8 +679,7 @@ public class MACE
      */
     public void variationalMStep()
     {
-        thetas = variationalNormalize(knowingExpectedCounts, thetaPriors);
-        strategies = variationalNormalize(strategyExpectedCounts, strategyPriors);
+        model.variationalMStep();
     }
 
     /**
@@ -298,11 +689,24 @@ public class MACE
      */
     public String[] decode(double threshold)
     {
-        // get entropies
-        double[] entropies = getLabelEntropies();
-        double entropyThreshold = getEntropyForThreshold(threshold);
+        int[] labelIds = decodeLabelIds(getLabelEntropies(), threshold);
 
         String[] result = new String[numInstances];
+        for (int d = 0; d < numInstances; ++d) {
+            result[d] = labelIds[d] >= 0 ? data.getLabelName(labelIds[d]) : "";
+        }
+
+        return result;
+    }
+
+    /**
+     * find best label ids under the current model, -1 for instances above threshold
+     */
+    private int[] decodeLabelIds(double[] entropies, double threshold)
+    {
+        double entropyThreshold = getEntropyForThreshold(threshold);
+
+        int[] result = new int[numInstances];
         for (int d = 0; d < numInstances; ++d) {
             double bestProb = Double.NEGATIVE_INFINITY;
             int bestLabel = -1;
@@ -311,20 +715,110 @@ public class MACE
             if (entropies[d] <= entropyThreshold) {
                 for (int l = 0; l < numLabels; ++l) {
 
-                    if (goldLabelMarginals[d][l] > bestProb) {
-                        bestProb = goldLabelMarginals[d][l];
+                    if (model.goldLabelMarginals[d * numLabels + l] > bestProb) {
+                        bestProb = model.goldLabelMarginals[d * numLabels + l];
                         bestLabel = l;
                     }
                 }
-                result[d] = int2String.get(bestLabel);
             }
-            else
-                result[d] = "";
+            result[d] = bestLabel;
         }
 
         return result;
     }
 
+    /**
+     * Gold labels, entropies and competences under the current model (after
+     * {@link #run(int, double, int, double, double, boolean, Map, int)})
+     *
+     * @param threshold only predict the label for instances whose entropy is among the top
+     *                  n% (0.0 - 1.0)
+     * @return result
+     */
+    public MACEResult getResult(double threshold)
+    {
+        if (threshold < 0.0 || threshold > 1.0) {
+            throw new IllegalArgumentException("threshold not between 0.0 and 1.0");
+        }
+
+        double[] entropies = getLabelEntropies();
+        return new MACEResult(decodeLabelIds(entropies, threshold), entropies,
+                getCompetences(), data.getLabelNames(), model.logMarginalLikelhood);
+    }
+
+    /**
+     * Estimates gold labels and annotator competences in memory, with the settings of the
+     * command line defaults (non-variational, smoothing 0.01/|labels|), no control items
+     *
+     * @param data        annotations
+     * @param threshold   only predict the label for instances whose entropy is among the top
+     *                    n% (0.0 - 1.0)
+     * @param numIters    number of iterations of each restart
+     * @param numRestarts number of restarts
+     * @param seed        seed of the restarts
+     * @param numThreads  number of restarts running in parallel
+     * @return result
+     */
+    public static MACEResult estimate(AnnotationMatrix data, double threshold, int numIters,
+            int numRestarts, long seed, int numThreads)
+    {
+        return train(data, numIters, numRestarts, seed, numThreads).getResult(threshold);
+    }
+
+    /**
+     * As {@link #estimate(AnnotationMatrix, double, int, int, long, int)} but returns the
+     * trained MACE, e.g., to warm start later runs from it
+     *
+     * @return trained MACE
+     */
+    public static MACE train(AnnotationMatrix data, int numIters, int numRestarts, long seed,
+            int numThreads)
+    {
+        MACE mace = new MACE(data);
+        mace.setSeed(seed);
+        mace.run(numIters, numRestarts, numThreads);
+
+        return mace;
+    }
+
+    /**
+     * run EM with the settings of the command line defaults (non-variational, smoothing
+     * 0.01/|labels|), no control items
+     *
+     * @param numIters    number of iterations of each restart
+     * @param numRestarts number of restarts
+     * @param numThreads  number of restarts running in parallel
+     */
+    public void run(int numIters, int numRestarts, int numThreads)
+    {
+        run(numIters, 0.01 / (double) numLabels, numRestarts, DEFAULT_ALPHA, DEFAULT_BETA,
+                false, Collections.<Integer, Integer>emptyMap(), numThreads);
+    }
+
+    /**
+     * Trains MACE on data extended by new items, annotators or labels, warm-started from a
+     * previous run (see {@link #initialize(MACE, int[])}), with the settings of
+     * {@link #train(AnnotationMatrix, int, int, long, int)}
+     *
+     * @param previous           trained MACE
+     * @param data               annotations, including those of the previous run
+     * @param previousAnnotators index of each annotator in the data of the previous run, or
+     *                           -1 for new annotators
+     * @param numIters           number of iterations
+     * @param numThreads         number of threads of the E-step
+     * @return trained MACE
+     */
+    public static MACE trainWarmStart(MACE previous, AnnotationMatrix data,
+            int[] previousAnnotators, int numIters, int numThreads)
+    {
+        MACE mace = new MACE(data);
+        mace.initialize(previous, previousAnnotators);
+        mace.runWarmStart(numIters, 0.01 / (double) mace.numLabels, DEFAULT_ALPHA,
+                DEFAULT_BETA, false, Collections.<Integer, Integer>emptyMap(), numThreads);
+
+        return mace;
+    }
+
     /**
      * @return the entropies of each instance
      */
@@ -336,10 +830,10 @@ public class MACE
             double norm = 0.0;
             double entropy = 0.0;
             for (int l = 0; l < numLabels; ++l) {
-                norm += goldLabelMarginals[d][l];
+                norm += model.goldLabelMarginals[d * numLabels + l];
             }
             for (int l = 0; l < numLabels; ++l) {
-                double p = goldLabelMarginals[d][l] / norm;
+                double p = model.goldLabelMarginals[d * numLabels + l] / norm;
                 if (p > 0.0) {
                     entropy += -p * Math.log(p);
                 }
@@ -351,7 +845,55 @@ public class MACE
     }
 
     /**
-     * run EM with the specified parameters
+     * @return competence (probability of knowing the correct label) of each annotator under
+     * the current model
+     */
+    public double[] getCompetences()
+    {
+        double[] result = new double[numAnnotators];
+        for (int a = 0; a < numAnnotators; a++) {
+            result[a] = model.thetas[a * 2 + 1];
+        }
+        return result;
+    }
+
+    /**
+     * @return log marginal likelihood of the current model
+     */
+    public double getLogMarginalLikelihood()
+    {
+        return model.logMarginalLikelhood;
+    }
+
+    /**
+     * @return log marginal likelihood of the current model after its initial E-step and
+     * after each EM iteration
+     */
+    public double[] getLikelihoodTrace()
+    {
+        return Arrays.copyOf(model.likelihoodTrace, model.traceLength);
+    }
+
+    /**
+     * @return number of EM iterations of all restarts of the last run
+     */
+    public long getIterationsRun()
+    {
+        return iterationsRun;
+    }
+
+    /**
+     * @return number of EM iterations of the last run that were skipped by early stopping or
+     * abandoned restarts, less the screening iterations of restarts run again (see
+     * {@link #setRestartScreening(int, double)}), so possibly negative
+     */
+    public long getIterationsSaved()
+    {
+        return iterationsSaved;
+    }
+
+    /**
+     * run EM with the specified parameters, restarts run one after another
      *
      * @param beta         beta
      * @param numIters:    number of iterations
@@ -363,79 +905,321 @@ public class MACE
             boolean variational, String controlsFile)
             throws IOException
     {
-        Map<Integer, Integer> controls;
-        if (controlsFile != null) {
-            controls = this.readControls(controlsFile);
-        }
-        else {
-            controls = new HashMap<>();
+        run(numIters, smoothing, numRestarts, alpha, beta, variational, controlsFile, 1);
+    }
+
+    /**
+     * run EM with the specified parameters; restarts run in parallel, each with its own
+     * parameters initialized from a seed derived from {@link #setSeed(long)} and the restart
+     * number. The model with the highest log marginal likelihood is kept (the earliest
+     * restart on ties), so the result does not depend on the number of threads.
+     *
+     * @param beta         beta
+     * @param numIters:    number of iterations
+     * @param smoothing:   smoothing added to expected counts before normalizing
+     * @param numRestarts: number of restarts
+     * @param numThreads:  number of threads; restarts run in parallel and the E-step of
+     *                     each restart runs its chunks of instances in the same pool
+     * @throws IOException
+     */
+    public void run(int numIters, double smoothing, int numRestarts, double alpha, double beta,
+            boolean variational, String controlsFile, int numThreads)
+            throws IOException
+    {
+        Map<Integer, Integer> controls = controlsFile != null ?
+                this.readControls(controlsFile) :
+                Collections.<Integer, Integer>emptyMap();
+
+        run(numIters, smoothing, numRestarts, alpha, beta, variational, controls, numThreads);
+    }
+
+    /**
+     * run EM with the specified parameters, as {@link #run(int, double, int, double, double,
+     * boolean, String, int)} but with control items given directly
+     *
+     * @param controls: control label id (see {@link AnnotationMatrix#getLabelId(String)})
+     *                  by instance; may be empty
+     */
+    public void run(int numIters, double smoothing, int numRestarts, double alpha, double beta,
+            boolean variational, Map<Integer, Integer> controlItems, int numThreads)
+    {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("threads less than 1");
         }
 
-        double[][] bestThetas = new double[numAnnotators][2];
-        double[][] bestStrategies = new double[numAnnotators][numLabels];
-        double bestLogMarginalLikelihood = Double.NEGATIVE_INFINITY;
-        int rrBestModelOccurredAt = 0;
+        int[] controls = toControlArray(controlItems);
+
+        if (variational) {
+            initializePriors(alpha, beta);
+        }
 
         System.out.println("Running training with the following settings:");
         System.out.println("\t" + numIters + " iterations");
         System.out.println("\t" + numRestarts + " restarts");
+        System.out.println("\t" + numThreads + " threads");
         System.out.println("\tsmoothing = " + smoothing);
         if (variational) {
             System.out.println("\talpha = " + alpha);
             System.out.println("\tbeta = " + beta);
         }
 
+        if (convergenceTolerance > 0.0) {
+            System.out.println("\ttolerance = " + convergenceTolerance + " (patience "
+                    + convergencePatience + ")");
+        }
+        // screening only makes sense if there are iterations left afterwards
+        int screening = screeningIterations > 0 && screeningIterations < numIters ?
+                screeningIterations :
+                numIters;
+        if (screening < numIters) {
+            System.out.println("\tscreening of restarts after " + screening
+                    + " iterations, margin = " + screeningMargin);
+        }
+
         double start = System.currentTimeMillis();
-        for (int rr = 0; rr < numRestarts; rr++) {
-            debug("\n============");
-            debug("Restart " + (rr + 1));
-            debug("============");
-
-            // initialize
-            if (variational)
-                initialize(DEFAULT_NOISE, alpha, beta);
-            else
-                initialize(DEFAULT_NOISE);
-
-            // run first E-Step to get counts
-            EStep(controls);
-            debug("initial log marginal likelihood = " + logMarginalLikelhood);
 
-            // iterate
-            for (int t = 0; t < numIters; ++t) {
-                if (variational)
-                    variationalMStep();
-                else
-                    MStep(smoothing);
-                EStep(controls);
-                //System.out.println("iter "+t);
-                //System.out.println("log marginal likelihood "+logMarginalLikelhood);
+        // only the best model so far is kept, not all restarts; during the screening, the
+        // likelihoods of all restarts but at most numThreads models
+        Model[] best = new Model[1];
+        int[] rrBestModelOccurredAt = new int[1];
+        double[] screenedLikelihoods = screening < numIters ? new double[numRestarts] : null;
+        Model[] screened = screening < numIters ? new Model[numRestarts] : null;
+        AtomicLong iterations = new AtomicLong();
+        int abandoned = 0;
+        AtomicInteger runAgain = new AtomicInteger();
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int rr = 0; rr < numRestarts; rr++) {
+                int restart = rr;
+                tasks.add(() -> {
+                    Model result = startRestart(restart, controls, pool);
+                    result.iterate(screening, smoothing, variational, controls);
+                    debug("Restart " + (restart + 1) + ": log marginal likelihood = "
+                            + result.logMarginalLikelhood + " after " + result.getIterations()
+                            + " iterations");
+
+                    if (screened != null) {
+                        iterations.addAndGet(
+                                holdScreened(screened, screenedLikelihoods, result, restart,
+                                        numThreads));
+                    }
+                    else {
+                        iterations.addAndGet(result.getIterations());
+                        offerModel(best, rrBestModelOccurredAt, result, restart);
+                    }
+                });
+            }
+            invokeAll(pool, tasks);
+
+            if (screened != null) {
+                double bestScreened = Double.NEGATIVE_INFINITY;
+                for (double likelihood : screenedLikelihoods) {
+                    bestScreened = Math.max(bestScreened, likelihood);
+                }
+                double limit = bestScreened - screeningMargin * Math.abs(bestScreened);
+
+                tasks.clear();
+                for (int rr = 0; rr < numRestarts; rr++) {
+                    Model held = screened[rr];
+                    screened[rr] = null;
+
+                    if (screenedLikelihoods[rr] < limit) {
+                        debug("Restart " + (rr + 1) + " abandoned");
+                        if (held != null) {
+                            iterations.addAndGet(held.getIterations());
+                        }
+                        abandoned++;
+                        continue;
+                    }
+
+                    int restart = rr;
+                    tasks.add(() -> {
+                        // the same model again if it was not kept
+                        Model result = held;
+                        if (result == null) {
+                            runAgain.incrementAndGet();
+                            result = startRestart(restart, controls, pool);
+                        }
+                        result.iterate(numIters, smoothing, variational, controls);
+                        debug("Restart " + (restart + 1) + ": final log marginal likelihood = "
+                                + result.logMarginalLikelhood + " after " + result
+                                .getIterations() + " iterations");
+
+                        iterations.addAndGet(result.getIterations());
+                        offerModel(best, rrBestModelOccurredAt, result, restart);
+                    });
+                }
+                invokeAll(pool, tasks);
             }
-            debug("final log marginal likelihood = " + logMarginalLikelhood);
-
-            // renormalize thetas
-            //normalizeInPlace(thetas, 0.0);
-            //normalizeInPlace(strategies, 0.0);
-
-            if (logMarginalLikelhood > bestLogMarginalLikelihood) {
-                //if (rr>0) System.out.println("NEW BEST MODEL!\n");
-                rrBestModelOccurredAt = rr + 1;
-                bestLogMarginalLikelihood = logMarginalLikelhood;
-                bestThetas = thetas.clone();
-                bestStrategies = strategies.clone();
+
+            // run E-step to get marginals of latest model
+            best[0].EStep(controls);
+        }
+        finally {
+            if (best[0] != null) {
+                best[0].pool = null;
             }
+            pool.shutdown();
         }
+
+        iterationsRun = iterations.get();
+        iterationsSaved = (long) numRestarts * numIters - iterationsRun;
+
         System.out.println(
                 "\nTraining completed in " + ((System.currentTimeMillis() - start) / 1000) + "sec");
-        System.out.println("Best model came from random restart number " + rrBestModelOccurredAt
-                + " (log marginal likelihood: " + bestLogMarginalLikelihood + ")");
-        logMarginalLikelhood = bestLogMarginalLikelihood;
-        thetas = bestThetas;
-        strategies = bestStrategies;
+        System.out.println("Iterations: " + iterationsRun + " of " + ((long) numRestarts * numIters)
+                + " (" + iterationsSaved + " saved, " + abandoned + " restarts abandoned, "
+                + runAgain.get() + " run again)");
+        System.out.println("Best model came from random restart number " + rrBestModelOccurredAt[0]
+                + " (log marginal likelihood: " + best[0].logMarginalLikelhood + ", "
+                + best[0].getIterations() + " iterations)");
+        model = best[0];
+    }
 
-        // run E-step to get marginals of latest model
-        EStep(controls);
+    /**
+     * run EM from the current model, e.g., after {@link #initialize(MACE, int[])}, without
+     * restarts. Starting from a model trained on most of the data, a few iterations are
+     * enough; as EM only finds a local optimum, a full {@link #run} should still be done
+     * from time to time.
+     *
+     * @param numIters:    number of iterations
+     * @param smoothing:   smoothing added to expected counts before normalizing
+     * @param controlItems control label id by instance; may be empty
+     * @param numThreads:  number of threads of the E-step
+     */
+    public void runWarmStart(int numIters, double smoothing, double alpha, double beta,
+            boolean variational, Map<Integer, Integer> controlItems, int numThreads)
+    {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("threads less than 1");
+        }
+        if (model == null) {
+            throw new IllegalStateException("No model to start from; initialize it first");
+        }
 
+        int[] controls = toControlArray(controlItems);
+
+        if (variational) {
+            initializePriors(alpha, beta);
+        }
+
+        double start = System.currentTimeMillis();
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        model.pool = pool;
+        try {
+            model.start(controls);
+            debug("Warm start: initial log marginal likelihood = "
+                    + model.logMarginalLikelhood);
+            model.iterate(numIters, smoothing, variational, controls);
+        }
+        finally {
+            model.pool = null;
+            pool.shutdown();
+        }
+
+        iterationsRun = model.getIterations();
+        iterationsSaved = numIters - iterationsRun;
+
+        System.out.println(
+                "\nWarm start (" + iterationsRun + " iterations) completed in " + (
+                        (System.currentTimeMillis() - start) / 1000) + "sec (log marginal "
+                        + "likelihood: " + model.logMarginalLikelhood + ")");
+    }
+
+    /**
+     * A single restart from its own random initialization, after the first E-step
+     */
+    private Model startRestart(int rr, int[] controls, ForkJoinPool pool)
+    {
+        debug("Restart " + (rr + 1) + " started");
+
+        Model restartModel = new Model(DEFAULT_NOISE, restartSeed(seed, rr));
+        restartModel.pool = pool;
+
+        // run first E-Step to get counts
+        restartModel.start(controls);
+        debug("Restart " + (rr + 1) + ": initial log marginal likelihood = "
+                + restartModel.logMarginalLikelhood);
+
+        return restartModel;
+    }
+
+    /**
+     * Records the likelihood of a screened restart and keeps its model among the best
+     * screened ones (as in {@link #offerModel}); if more than maxHeld models are kept, the
+     * worst one is dropped
+     *
+     * @return iterations of the dropped model, or 0
+     */
+    private static int holdScreened(Model[] screened, double[] screenedLikelihoods,
+            Model result, int restart, int maxHeld)
+    {
+        synchronized (screened) {
+            screenedLikelihoods[restart] = result.logMarginalLikelhood;
+            screened[restart] = result;
+
+            int held = 0;
+            int worst = -1;
+            for (int rr = 0; rr < screened.length; rr++) {
+                if (screened[rr] != null) {
+                    held++;
+                    // the later restart on ties
+                    if (worst < 0 || screenedLikelihoods[rr] <= screenedLikelihoods[worst]) {
+                        worst = rr;
+                    }
+                }
+            }
+            if (held <= maxHeld) {
+                return 0;
+            }
+
+            int dropped = screened[worst].getIterations();
+            screened[worst] = null;
+            return dropped;
+        }
+    }
+
+    /**
+     * Keeps the model if it is better than the best one so far, or as good but from an
+     * earlier restart
+     */
+    private static void offerModel(Model[] best, int[] rrBestModelOccurredAt, Model result,
+            int restart)
+    {
+        synchronized (best) {
+            if (best[0] == null || result.logMarginalLikelhood > best[0].logMarginalLikelhood
+                    || (result.logMarginalLikelhood == best[0].logMarginalLikelhood
+                    && restart + 1 < rrBestModelOccurredAt[0])) {
+                best[0] = result;
+                rrBestModelOccurredAt[0] = restart + 1;
+            }
+        }
+    }
+
+    private static void invokeAll(ForkJoinPool pool, List<Runnable> tasks)
+    {
+        List<ForkJoinTask<?>> submitted = new ArrayList<>();
+        for (Runnable task : tasks) {
+            submitted.add(pool.submit(task));
+        }
+        for (ForkJoinTask<?> task : submitted) {
+            task.join();
+        }
+    }
+
+    /**
+     * Seed of the given restart (a mix of the master seed and the restart number, so the
+     * initializations of neighbouring restarts are not correlated)
+     */
+    static long restartSeed(long masterSeed, int restart)
+    {
+        long z = masterSeed + (restart + 1) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     private void debug(String message)
@@ -508,6 +1292,54 @@ public class MACE
         }
     }
 
+    /**
+     * normalize a flat matrix by row; the result may be written into the input
+     *
+     * @param mat       rows of the given length
+     * @param result    output, same size as the input
+     * @param rowLength length of a row
+     * @param smoothing smoothing added to each value
+     */
+    public static void normalizeRowsInPlace(double[] mat, double[] result, int rowLength,
+            double smoothing)
+    {
+        for (int from = 0; from < mat.length; from += rowLength) {
+            double norm = 0.0;
+            for (int j = from; j < from + rowLength; ++j) {
+                norm += mat[j] + smoothing;
+            }
+            for (int j = from; j < from + rowLength; ++j) {
+                result[j] = norm > 0.0 ? (mat[j] + smoothing) / norm : 0.0;
+            }
+        }
+    }
+
+    /**
+     * normalize a flat matrix by row using hyperparameters; the result may be written into
+     * the input
+     *
+     * @param mat             rows of the given length
+     * @param result          output, same size as the input
+     * @param rowLength       length of a row
+     * @param hyperparameters the priors, the same for each row
+     */
+    public static void variationalNormalizeRowsInPlace(double[] mat, double[] result,
+            int rowLength, double[] hyperparameters)
+    {
+        for (int from = 0; from < mat.length; from += rowLength) {
+            double norm = 0.0;
+            for (int j = 0; j < rowLength; ++j) {
+                norm += mat[from + j] + hyperparameters[j];
+            }
+            norm = Math.exp(digamma(norm));
+            for (int j = 0; j < rowLength; ++j) {
+                result[from + j] = norm > 0.0 ?
+                        Math.exp(digamma((mat[from + j] + hyperparameters[j]))) / norm :
+                        0.0;
+            }
+        }
+    }
+
     /**
      * read in a file with control items
      *
@@ -532,13 +1364,14 @@ public class MACE
                 // record item
                 if (!line.equals("")) {
 
-                    // record value if not hashed yet
-                    if (!string2Int.containsKey(line)) {
-                        string2Int.put(line, hashCounter++);
-                        int2String.add(line);
+                    // only labels occurring in the data can be used
+                    int label = data.getLabelId(line);
+                    if (label < 0) {
+                        throw new IOException("control label '" + line + "' in line "
+                                + (lineNumber + 1) + " does not occur in the data");
                     }
 
-                    controls.put(lineNumber, string2Int.get(line));
+                    controls.put(lineNumber, label);
                 }
 
                 lineNumber++;
@@ -558,99 +1391,14 @@ public class MACE
      *
      * @throws IOException
      */
-    public void readFileData(String fileName)
-            throws IOException
-    {
-        readFileData(new BufferedReader(new FileReader(fileName)));
-    }
-
-    /**
-     * read CSV file and record data
-     *
-     * @throws IOException
-     */
-    public void readFileData(BufferedReader bufferedReader)
+    public static AnnotationMatrix readFileData(String fileName)
             throws IOException
     {
-        String line;
-
         System.out.println("Reading CSV file");
 
-        int lineNumber = 0;
-        while ((line = bufferedReader.readLine()) != null) {
-            if (lineNumber > 0) {
-                if (lineNumber % 5 == 0)
-                    System.out.print(".");
-                if (lineNumber % 100 == 0)
-                    System.out.println(lineNumber);
-            }
-
-            List<Integer> annotatorsOnItem = new ArrayList<>();
-            List<Integer> itemValues = new ArrayList<>();
-
-            // split into items
-            StringBuilder token = new StringBuilder("");
-            int readPosition = 0;
-            int annotatorNumber = 0;
-            char[] charArray = line.toCharArray();
-            for (char c : charArray) {
-                // record values
-                if (c != ',')
-                    token.append(c);
-
-                // record after a comma or at the end of the line
-                if (c == ',' || readPosition + 1 == charArray.length) {
-
-                    // last item can be comma or value, so check for both before you break
-                    String item = token.toString();
-
-                    // reset token
-                    token = new StringBuilder("");
-
-                    // record item
-                    if (!item.equals("")) {
-
-                        // record which annotator gave an answer
-                        annotatorsOnItem.add(annotatorNumber);
-
-                        // record value
-                        if (!string2Int.containsKey(item)) {
-                            string2Int.put(item, hashCounter++);
-                            int2String.add(item);
-                        }
-                        itemValues.add(string2Int.get(item));
-                    }
-
-                }
-
-                // advance reading position
-                readPosition++;
-
-                // separate annotators
-                if (c == ',')
-                    annotatorNumber++;
-
-            }
-
-            if (numAnnotators > 0 && annotatorNumber + 1 != this.numAnnotators) {
-                throw new IOException("number of annotations in line " + (lineNumber + 1)
-                        + " differs from previous line!");
-            }
-            this.numAnnotators = annotatorNumber + 1;
-
-            // store as int[][]
-            labels[lineNumber] = toIntArray(itemValues);
-            whoLabeled[lineNumber] = toIntArray(annotatorsOnItem);
-
-            lineNumber++;
-        }// while there are lines left
-
-        System.out.println(
-                "\nstats:\n\t" + lineNumber + " instances,\n\t" + int2String.size() + " labels "
-                        + int2String + ",\n\t" + numAnnotators + " annotators\n");
-
-        //printIntArray(whoLabeled);
-
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName))) {
+            return AnnotationMatrix.readCSV(bufferedReader);
+        }
     }
 
     /**
@@ -838,9 +1586,22 @@ public class MACE
         System.out.println(
                 "\t--iterations <1-1000>:\tnumber of iterations for each EM start. Default: "
                         + MACE.DEFAULT_ITERATIONS + "\n");
+        System.out.println(
+                "\t--patience <INTEGER>:\tnumber of iterations within the tolerance before a restart stops. Default: 1\n");
         System.out.println("\t--prefix <STRING>:\tprefix used for output files.\n");
         System.out.println("\t--restarts <1-1000>:\tnumber of random restarts to perform. Default: "
                 + MACE.DEFAULT_RR + "\n");
+        System.out.println(
+                "\t--screening <INTEGER>:\tnumber of iterations after which restarts whose log marginal likelihood\n"
+                        + "\t\t\t\tis not within the screening margin of the best one are abandoned. Default: 0 (off)\n");
+        System.out.println(
+                "\t--screeningMargin <FLOAT>:\trelative margin for --screening. Default: 0.0\n");
+        System.out.println(
+                "\t--seed <INTEGER>:\tseed of the random initialization; each restart uses a seed derived from it.\n"
+                        + "\t\t\t\tDefault: " + MACE.DEFAULT_SEED + "\n");
+        System.out.println(
+                "\t--threads <INTEGER>:\tnumber of threads for the restarts and the E-step. The result does not depend on it.\n"
+                        + "\t\t\t\tDefault: 1\n");
         System.out.println(
                 "\t--smoothing <0.0-1.0>:\tsmoothing added to fractional counts before normalization.\n"
                         + "\t\t\t\tHigher values mean smaller changes. Default: 0.01/|values|\n");
@@ -848,6 +1609,9 @@ public class MACE
                 "\t--test <FILE>:\t\tsupply a test file. Each line corresponds to one item in the CSV file,\n"
                         + "\t\t\t\tso the number of lines must match. If a test file is supplied,\n"
                         + "\t\t\t\tMACE outputs the accuracy of the predictions\n");
+        System.out.println(
+                "\t--tolerance <FLOAT>:\tstop a restart once the relative change of the log marginal likelihood\n"
+                        + "\t\t\t\tis at most this for --patience iterations. Default: 0.0 (all iterations)\n");
         System.out.println(
                 "\t--threshold <0.0-1.0>:\tonly predict the label for instances whose entropy is among the top n%, ignore others.\n"
                         + "\t\t\t\tThus '--threshold 0.0' will ignore all instances, '--threshold 1.0' includes all.\n"
@@ -898,6 +1662,11 @@ public class MACE
             boolean variational = false;
             double alpha = MACE.DEFAULT_ALPHA;
             double beta = MACE.DEFAULT_BETA;
+            int threads = 1;
+            double tolerance = 0.0;
+            int patience = 1;
+            int screening = 0;
+            double screeningMargin = 0.0;
 
             String outputPredictions = null;
             String outputCompetence = null;
@@ -962,6 +1731,26 @@ public class MACE
                     beta = Double.valueOf(args[++i]);
                     variational = true;
                 }
+                else if (arg.equals("--seed")) {
+                    em.setSeed(Long.valueOf(args[++i]));
+                }
+                else if (arg.equals("--threads")) {
+                    threads = Integer.valueOf(args[++i]);
+                    if (threads < 1)
+                        throw new IllegalArgumentException("threads less than 1");
+                }
+                else if (arg.equals("--tolerance")) {
+                    tolerance = Double.valueOf(args[++i]);
+                }
+                else if (arg.equals("--patience")) {
+                    patience = Integer.valueOf(args[++i]);
+                }
+                else if (arg.equals("--screening")) {
+                    screening = Integer.valueOf(args[++i]);
+                }
+                else if (arg.equals("--screeningMargin")) {
+                    screeningMargin = Double.valueOf(args[++i]);
+                }
                 else if (arg.equals("--outputPredictions")) {
                     outputPredictions = args[++i];
                 }
@@ -974,7 +1763,9 @@ public class MACE
             }
 
             // run with configuration
-            em.run(iterations, smoothing, restarts, alpha, beta, variational, controls);
+            em.setConvergence(tolerance, patience);
+            em.setRestartScreening(screening, screeningMargin);
+            em.run(iterations, smoothing, restarts, alpha, beta, variational, controls, threads);
 
             // write results to files
             // generate predictions
@@ -988,7 +1779,7 @@ public class MACE
             // generate competence scores
             Object[] competence = new Object[em.numAnnotators];
             for (int i = 0; i < em.numAnnotators; i++) {
-                competence[i] = em.thetas[i][1];
+                competence[i] = em.model.thetas[i * 2 + 1];
             }
             String competenceName = prefix == null ? "competence" : prefix + ".competence";
             if (outputCompetence != null) {
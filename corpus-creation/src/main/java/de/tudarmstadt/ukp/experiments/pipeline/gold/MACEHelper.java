@@ -20,7 +20,6 @@ package de.tudarmstadt.ukp.experiments.pipeline.gold;
 
 import com.google.common.collect.Table;
 import com.google.common.collect.TreeBasedTable;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import de.tudarmstadt.ukp.experiments.pipeline.utils.CollectionUtils;
@@ -28,8 +27,6 @@ import de.tudarmstadt.ukp.experiments.pipeline.utils.TableUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -134,8 +131,34 @@ public class MACEHelper
     {
         public SortedMap<String, String> goldLabels;
         public Map<String, Double> workerCompetences;
+
+        /**
+         * Trained MACE and the worker ID of each of its annotators, to warm start
+         * {@link #updateGoldLabels(SortedMap, double, GoldLabelEstimationResultContainer)}
+         */
+        public MACE mace;
+        public List<String> workerIDs;
     }
 
+    /**
+     * Seed of the MACE restarts in {@link #estimateGoldLabels(SortedMap, double)}
+     */
+    public static final long MACE_SEED = 0;
+
+    /**
+     * Early stopping of the MACE restarts: relative tolerance of the log marginal likelihood
+     * and patience (see {@link MACE#setConvergence(double, int)}); checked not to change any
+     * gold label of our annotation tasks compared to running all 500 iterations
+     */
+    public static final double MACE_TOLERANCE = 1e-9;
+    public static final int MACE_PATIENCE = 10;
+
+    /**
+     * EM iterations of
+     * {@link #updateGoldLabels(SortedMap, double, GoldLabelEstimationResultContainer)}
+     */
+    public static final int MACE_WARM_START_ITERATIONS = 20;
+
     /**
      * Date format for assignment time
      */
@@ -153,75 +176,74 @@ public class MACEHelper
             double maceThreshold)
             throws IOException
     {
-        SortedMap<String, String> goldLabels = new TreeMap<>();
-
         List<String> sortedWorkerIDs = new ArrayList<>(collectWorkerIDs(allAssignments));
 
         System.out.println("All worker IDs: " + sortedWorkerIDs);
 
-        // for each item we need an array of annotations, i.e.
-        // label1,,,label1,label2,label1,,,
-        // whose size is number of annotators and annotators are identified by position (array index)
+        // sparse matrix of items x workers, workers identified by their index in the sorted IDs
+        AnnotationMatrix matrix = buildAnnotationMatrix(allAssignments, sortedWorkerIDs);
 
-        // storing the resulting lines
-        List<String> csvLines = new ArrayList<>();
+        // run MACE in memory; restarts in parallel, seeded so the gold labels are the same
+        // in every run
+        MACE mace = new MACE(matrix);
+        mace.setSeed(MACE_SEED);
+        mace.setConvergence(MACE_TOLERANCE, MACE_PATIENCE);
+        mace.run(500, 50, Runtime.getRuntime().availableProcessors());
 
-        for (SortedSet<SingleWorkerAssignment<T>> singleArgumentAssignments : allAssignments
-                .values()) {
-            // for storing individual assignments
-            String[] assignmentsArray = new String[sortedWorkerIDs.size()];
-            // fill with empty strings
-            Arrays.fill(assignmentsArray, "");
-
-            for (SingleWorkerAssignment<T> assignment : singleArgumentAssignments) {
-                // get the turker index
-                int turkerIndex = Collections
-                        .binarySearch(sortedWorkerIDs, assignment.getWorkerID());
-
-                // and set the label on the correct position in the array
-                assignmentsArray[turkerIndex] = assignment.getLabel().toString();
-            }
-
-            // concatenate with comma
-            String line = StringUtils.join(assignmentsArray, ",");
+        return createResult(allAssignments, maceThreshold, sortedWorkerIDs, mace);
+    }
 
-            System.out.println(line);
+    /**
+     * Re-estimates the gold labels after new assignments arrived (e.g., a new batch of
+     * HITs), starting from the model of a previous estimation instead of running all
+     * restarts again. The previous assignments must be part of the given ones.
+     *
+     * @param allAssignments all assignments, including the previous ones
+     * @param maceThreshold  threshold
+     * @param previous       result of a previous estimation
+     * @param <T>            label type
+     * @return result
+     * @throws IOException I/O exception
+     */
+    public static <T> GoldLabelEstimationResultContainer updateGoldLabels(
+            SortedMap<String, SortedSet<SingleWorkerAssignment<T>>> allAssignments,
+            double maceThreshold, GoldLabelEstimationResultContainer previous)
+            throws IOException
+    {
+        List<String> sortedWorkerIDs = new ArrayList<>(collectWorkerIDs(allAssignments));
 
-            csvLines.add(line);
+        // index of each worker in the previous model
+        int[] previousAnnotators = new int[sortedWorkerIDs.size()];
+        for (int i = 0; i < sortedWorkerIDs.size(); i++) {
+            previousAnnotators[i] = Math
+                    .max(Collections.binarySearch(previous.workerIDs, sortedWorkerIDs.get(i)),
+                            -1);
         }
 
-        // add empty line at the end
-        csvLines.add("");
-
-        String preparedCSV = StringUtils.join(csvLines, "\n");
+        AnnotationMatrix matrix = buildAnnotationMatrix(allAssignments, sortedWorkerIDs);
 
-        // save CSV and run MACE
-        Path tmpDir = Files.createTempDirectory("mace");
-        File maceInputFile = new File(tmpDir.toFile(), "input.csv");
-        FileUtils.writeStringToFile(maceInputFile, preparedCSV, "utf-8");
+        MACE mace = MACE.trainWarmStart(previous.mace, matrix, previousAnnotators,
+                MACE_WARM_START_ITERATIONS, Runtime.getRuntime().availableProcessors());
 
-        File outputPredictions = new File(tmpDir.toFile(), "predictions.txt");
-        File outputCompetence = new File(tmpDir.toFile(), "competence.txt");
+        return createResult(allAssignments, maceThreshold, sortedWorkerIDs, mace);
+    }
 
-        // run MACE
-        MACE.main(
-                new String[] { "--iterations", "500", "--threshold", String.valueOf(maceThreshold),
-                        "--restarts", "50", "--outputPredictions",
-                        outputPredictions.getAbsolutePath(), "--outputCompetence",
-                        outputCompetence.getAbsolutePath(), maceInputFile.getAbsolutePath() });
+    private static <T> GoldLabelEstimationResultContainer createResult(
+            SortedMap<String, SortedSet<SingleWorkerAssignment<T>>> allAssignments,
+            double maceThreshold, List<String> sortedWorkerIDs, MACE mace)
+    {
+        SortedMap<String, String> goldLabels = new TreeMap<>();
 
-        // read back the predictions and competence
-        List<String> predictions = FileUtils.readLines(outputPredictions, "utf-8");
+        MACEResult maceResult = mace.getResult(maceThreshold);
 
         // check the output
-        if (predictions.size() != allAssignments.size()) {
+        if (maceResult.getGoldLabels().length != allAssignments.size()) {
             throw new IllegalStateException(
-                    "Wrong size of the predicted file; expected " + allAssignments.size()
-                            + " lines but was " + predictions.size());
+                    "Wrong number of predictions; expected " + allAssignments.size()
+                            + " but was " + maceResult.getGoldLabels().length);
         }
 
-        String competenceRaw = FileUtils.readFileToString(outputCompetence, "utf-8");
-        String[] competence = competenceRaw.split("\t");
+        double[] competence = maceResult.getCompetences();
         if (competence.length != sortedWorkerIDs.size()) {
             throw new IllegalStateException(
                     "Expected " + sortedWorkerIDs.size() + " competence number, got "
@@ -231,7 +253,7 @@ public class MACEHelper
         // rank turkers by competence
         Map<String, Double> turkerIDCompetenceMap = new TreeMap<>();
         for (int i = 0; i < sortedWorkerIDs.size(); i++) {
-            turkerIDCompetenceMap.put(sortedWorkerIDs.get(i), Double.valueOf(competence[i]));
+            turkerIDCompetenceMap.put(sortedWorkerIDs.get(i), competence[i]);
         }
 
         // sort by value descending
@@ -245,10 +267,10 @@ public class MACEHelper
 
         for (int i = 0; i < allAssignments.size(); i++) {
             String argID = allStanceAssignmentsIDsSorted.get(i);
-            String goldLabel = predictions.get(i).trim();
+            String goldLabel = maceResult.getGoldLabel(i);
 
-            // might be empty
-            if (!goldLabel.isEmpty()) {
+            // might be empty (above the threshold)
+            if (goldLabel != null) {
                 // so far the gold label has format aXXX_aYYY_a1, aXXX_aYYY_a2, or aXXX_aYYY_equal
                 // strip now only the gold label
                 goldLabels.put(argID, goldLabel);
@@ -262,10 +284,44 @@ public class MACEHelper
         GoldLabelEstimationResultContainer result = new GoldLabelEstimationResultContainer();
         result.goldLabels = goldLabels;
         result.workerCompetences = sortedCompetences;
+        result.mace = mace;
+        result.workerIDs = sortedWorkerIDs;
 
         return result;
     }
 
+    /**
+     * Creates the input of MACE: one item per argument (in the order of the map), one
+     * annotator per worker (index in the sorted worker IDs); if a worker labeled an item
+     * several times, the last assignment counts
+     *
+     * @param allAssignments  assignments
+     * @param sortedWorkerIDs all worker IDs, sorted
+     * @param <T>             label type
+     * @return matrix
+     */
+    public static <T> AnnotationMatrix buildAnnotationMatrix(
+            SortedMap<String, SortedSet<SingleWorkerAssignment<T>>> allAssignments,
+            List<String> sortedWorkerIDs)
+    {
+        AnnotationMatrix.Builder builder = new AnnotationMatrix.Builder(sortedWorkerIDs.size());
+
+        for (SortedSet<SingleWorkerAssignment<T>> singleArgumentAssignments : allAssignments
+                .values()) {
+            builder.addItem();
+
+            for (SingleWorkerAssignment<T> assignment : singleArgumentAssignments) {
+                // get the turker index
+                int turkerIndex = Collections
+                        .binarySearch(sortedWorkerIDs, assignment.getWorkerID());
+
+                builder.setLabel(turkerIndex, assignment.getLabel().toString());
+            }
+        }
+
+        return builder.build();
+    }
+
     public static <T> SortedSet<String> collectWorkerIDs(
             SortedMap<String, SortedSet<SingleWorkerAssignment<T>>> assignments)
     {
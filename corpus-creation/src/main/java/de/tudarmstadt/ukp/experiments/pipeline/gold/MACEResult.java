@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.pipeline.gold;
+
+import java.util.List;
+
+/**
+ * Gold labels, their entropies and annotator competences estimated by {@link MACE}, indexed
+ * as the items and annotators of the {@link AnnotationMatrix}
+ *
+ * @author Ivan Habernal
+ */
+public class MACEResult
+{
+    private final int[] goldLabels;
+    private final double[] entropies;
+    private final double[] competences;
+    private final List<String> labelNames;
+    private final double logMarginalLikelihood;
+
+    public MACEResult(int[] goldLabels, double[] entropies, double[] competences,
+            List<String> labelNames, double logMarginalLikelihood)
+    {
+        if (goldLabels.length != entropies.length) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: " + goldLabels.length + " labels but " + entropies.length
+                            + " entropies");
+        }
+
+        this.goldLabels = goldLabels;
+        this.entropies = entropies;
+        this.competences = competences;
+        this.labelNames = labelNames;
+        this.logMarginalLikelihood = logMarginalLikelihood;
+    }
+
+    /**
+     * @return gold label id of each item (see {@link #getLabelName(int)}), -1 for items
+     * whose entropy was above the threshold
+     */
+    public int[] getGoldLabels()
+    {
+        return goldLabels;
+    }
+
+    /**
+     * @param item item
+     * @return gold label of the item or null if its entropy was above the threshold
+     */
+    public String getGoldLabel(int item)
+    {
+        return goldLabels[item] >= 0 ? labelNames.get(goldLabels[item]) : null;
+    }
+
+    /**
+     * @return entropy of the label distribution of each item
+     */
+    public double[] getEntropies()
+    {
+        return entropies;
+    }
+
+    /**
+     * @return competence of each annotator (probability of knowing the correct label)
+     */
+    public double[] getCompetences()
+    {
+        return competences;
+    }
+
+    /**
+     * @param label label id
+     * @return label
+     */
+    public String getLabelName(int label)
+    {
+        return labelNames.get(label);
+    }
+
+    public double getLogMarginalLikelihood()
+    {
+        return logMarginalLikelihood;
+    }
+}
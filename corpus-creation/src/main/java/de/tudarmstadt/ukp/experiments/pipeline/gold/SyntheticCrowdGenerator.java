@@ -0,0 +1,273 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.pipeline.gold;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Seeded generator of synthetic crowd annotations in the structures of
+ * {@link MACEHelper#estimateGoldLabels(SortedMap, double)}, with known gold labels, to test
+ * how gold-label estimation scales and how well it recovers the labels. Each item gets a
+ * uniformly drawn gold label and is annotated by distinct random workers. A worker knows
+ * the gold label with its competence, otherwise it guesses: competent workers uniformly,
+ * biased workers prefer one label, spammers always guess (competence 0).
+ *
+ * @author Ivan Habernal
+ */
+public class SyntheticCrowdGenerator
+{
+    public enum WorkerType
+    {
+        COMPETENT, BIASED, SPAMMER
+    }
+
+    /**
+     * Generated assignments with the true labels and workers
+     */
+    public static class Crowd
+    {
+        public final SortedMap<String, SortedSet<SingleWorkerAssignment<String>>> assignments;
+        public final SortedMap<String, String> goldLabels;
+        public final SortedMap<String, Double> workerCompetences;
+        public final SortedMap<String, WorkerType> workerTypes;
+
+        private Crowd(SortedMap<String, SortedSet<SingleWorkerAssignment<String>>> assignments,
+                SortedMap<String, String> goldLabels, SortedMap<String, Double> workerCompetences,
+                SortedMap<String, WorkerType> workerTypes)
+        {
+            this.assignments = assignments;
+            this.goldLabels = goldLabels;
+            this.workerCompetences = workerCompetences;
+            this.workerTypes = workerTypes;
+        }
+
+        /**
+         * @param estimatedLabels estimated label by item ID (null for items without label)
+         * @return fraction of items whose estimated label is the gold label
+         */
+        public double getAccuracy(SortedMap<String, String> estimatedLabels)
+        {
+            int correct = 0;
+            for (SortedMap.Entry<String, String> entry : goldLabels.entrySet()) {
+                if (entry.getValue().equals(estimatedLabels.get(entry.getKey()))) {
+                    correct++;
+                }
+            }
+            return (double) correct / goldLabels.size();
+        }
+    }
+
+    // assignment dates must be distinct, the assignments of an item are sorted by them
+    private static final long START_DATE = 1483228800000L;
+
+    private final long seed;
+
+    private int items = 1000;
+    private int workers = 100;
+    private int labels = 2;
+    private int assignmentsPerItem = 5;
+    private double spammerRate = 0.1;
+    private double biasedRate = 0.1;
+    private double bias = 0.8;
+    private double minCompetence = 0.5;
+    private double maxCompetence = 0.95;
+
+    public SyntheticCrowdGenerator(long seed)
+    {
+        this.seed = seed;
+    }
+
+    public SyntheticCrowdGenerator setItems(int items)
+    {
+        if (items < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + items + " items");
+        }
+        this.items = items;
+        return this;
+    }
+
+    public SyntheticCrowdGenerator setWorkers(int workers)
+    {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + workers + " workers");
+        }
+        this.workers = workers;
+        return this;
+    }
+
+    public SyntheticCrowdGenerator setLabels(int labels)
+    {
+        if (labels < 2) {
+            throw new IllegalArgumentException("Invalid argument: " + labels + " labels");
+        }
+        this.labels = labels;
+        return this;
+    }
+
+    /**
+     * @param assignmentsPerItem number of distinct workers per item (redundancy)
+     * @return this
+     */
+    public SyntheticCrowdGenerator setAssignmentsPerItem(int assignmentsPerItem)
+    {
+        if (assignmentsPerItem < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: " + assignmentsPerItem + " assignments per item");
+        }
+        this.assignmentsPerItem = assignmentsPerItem;
+        return this;
+    }
+
+    /**
+     * @param spammerRate fraction of workers who always guess uniformly
+     * @param biasedRate  fraction of workers who prefer one label when guessing
+     * @param bias        probability that a biased worker guesses its preferred label
+     * @return this
+     */
+    public SyntheticCrowdGenerator setWorkerTypes(double spammerRate, double biasedRate,
+            double bias)
+    {
+        if (spammerRate < 0.0 || biasedRate < 0.0 || spammerRate + biasedRate > 1.0) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: rates " + spammerRate + ", " + biasedRate);
+        }
+        if (bias < 0.0 || bias > 1.0) {
+            throw new IllegalArgumentException("Invalid argument: bias " + bias);
+        }
+        this.spammerRate = spammerRate;
+        this.biasedRate = biasedRate;
+        this.bias = bias;
+        return this;
+    }
+
+    /**
+     * @param minCompetence minimal competence of non-spammers
+     * @param maxCompetence maximal competence of non-spammers
+     * @return this
+     */
+    public SyntheticCrowdGenerator setCompetenceRange(double minCompetence,
+            double maxCompetence)
+    {
+        if (minCompetence < 0.0 || maxCompetence > 1.0 || minCompetence > maxCompetence) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: competences " + minCompetence + " - " + maxCompetence);
+        }
+        this.minCompetence = minCompetence;
+        this.maxCompetence = maxCompetence;
+        return this;
+    }
+
+    /**
+     * @return assignments; the same for the same seed and settings
+     */
+    public Crowd generate()
+    {
+        if (assignmentsPerItem > workers) {
+            throw new IllegalStateException(
+                    "Inconsistent input: " + assignmentsPerItem + " assignments per item but "
+                            + workers + " workers");
+        }
+
+        Random random = new Random(seed);
+
+        // workers; IDs padded so they sort like their index
+        String[] workerIDs = new String[workers];
+        WorkerType[] types = new WorkerType[workers];
+        double[] competences = new double[workers];
+        int[] preferredLabels = new int[workers];
+
+        SortedMap<String, Double> workerCompetences = new TreeMap<>();
+        SortedMap<String, WorkerType> workerTypes = new TreeMap<>();
+        for (int w = 0; w < workers; w++) {
+            workerIDs[w] = String.format("W%08d", w);
+
+            double type = random.nextDouble();
+            types[w] = type < spammerRate ?
+                    WorkerType.SPAMMER :
+                    type < spammerRate + biasedRate ? WorkerType.BIASED : WorkerType.COMPETENT;
+            competences[w] = types[w] == WorkerType.SPAMMER ?
+                    0.0 :
+                    minCompetence + (maxCompetence - minCompetence) * random.nextDouble();
+            preferredLabels[w] = random.nextInt(labels);
+
+            workerCompetences.put(workerIDs[w], competences[w]);
+            workerTypes.put(workerIDs[w], types[w]);
+        }
+
+        SortedMap<String, SortedSet<SingleWorkerAssignment<String>>> assignments = new TreeMap<>();
+        SortedMap<String, String> goldLabels = new TreeMap<>();
+        int[] itemWorkers = new int[assignmentsPerItem];
+        long assignmentNumber = 0;
+
+        for (int i = 0; i < items; i++) {
+            String itemID = String.format("I%08d", i);
+            int gold = random.nextInt(labels);
+            goldLabels.put(itemID, "l" + gold);
+
+            SortedSet<SingleWorkerAssignment<String>> itemAssignments = new TreeSet<>();
+            for (int j = 0; j < assignmentsPerItem; j++) {
+                itemWorkers[j] = drawDistinctWorker(random, itemWorkers, j);
+                int w = itemWorkers[j];
+
+                int label;
+                if (random.nextDouble() < competences[w]) {
+                    label = gold;
+                }
+                else if (types[w] == WorkerType.BIASED && random.nextDouble() < bias) {
+                    label = preferredLabels[w];
+                }
+                else {
+                    label = random.nextInt(labels);
+                }
+
+                itemAssignments.add(new SingleWorkerAssignment<>(workerIDs[w],
+                        new Date(START_DATE + 1000L * assignmentNumber++), "l" + label));
+            }
+            assignments.put(itemID, itemAssignments);
+        }
+
+        return new Crowd(assignments, goldLabels, workerCompetences, workerTypes);
+    }
+
+    /**
+     * @return a worker not among the first {@code count} ones
+     */
+    private int drawDistinctWorker(Random random, int[] drawn, int count)
+    {
+        while (true) {
+            int worker = random.nextInt(workers);
+            boolean distinct = true;
+            for (int j = 0; j < count; j++) {
+                if (drawn[j] == worker) {
+                    distinct = false;
+                    break;
+                }
+            }
+            if (distinct) {
+                return worker;
+            }
+        }
+    }
+}
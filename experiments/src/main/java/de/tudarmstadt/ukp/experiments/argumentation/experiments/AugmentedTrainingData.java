@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Read-only view of the training data extended by augmentations which are created lazily
+ * when an element is accessed, so the augmented variants of the training data
+ * ({@code train-w-swap.tsv}, {@code train-doubled.tsv}, {@code train-w-swap-doubled.tsv}) need
+ * not be stored or parsed. Each augmentation doubles the data: every base instance is
+ * followed by its variants in all combinations of the augmentations. The view holds only
+ * the references to the base instances; the variants share their strings.
+ * <p>
+ * The elements have the IDs of their base instances, so the view may contain the same ID
+ * several times (as the augmented files); use it with classifiers which accept such data,
+ * e.g. {@link HashedLinearClassifier#train(Collection)}.
+ *
+ * @author Ivan Habernal
+ */
+public class AugmentedTrainingData
+        extends AbstractList<SingleInstance>
+{
+    public enum Augmentation
+    {
+        /**
+         * Swaps warrant0 and warrant1 and flips the label
+         */
+        SWAP_WARRANTS,
+
+        /**
+         * Replaces the claim by the opposing claim of the debate and flips the label (the
+         * other warrant is correct for the opposing claim)
+         */
+        OPPOSING_CLAIM
+    }
+
+    private final List<SingleInstance> base;
+    private final Augmentation[] augmentations;
+    private final Map<String, String> opposingClaims;
+
+    private AugmentedTrainingData(List<SingleInstance> base, Augmentation[] augmentations,
+            Map<String, String> opposingClaims)
+    {
+        this.base = base;
+        this.augmentations = augmentations;
+        this.opposingClaims = opposingClaims;
+    }
+
+    /**
+     * Creates the view; the base instances are sorted by ID so the order does not depend on
+     * the iteration order of the collection
+     *
+     * @param base           training data
+     * @param opposingClaims opposing claims as loaded by {@link #loadOpposingClaims(File)};
+     *                       only needed for {@link Augmentation#OPPOSING_CLAIM}
+     * @param augmentations  augmentations
+     * @return view
+     * @throws IllegalArgumentException if an opposing claim is missing
+     */
+    public static AugmentedTrainingData of(Collection<SingleInstance> base,
+            Map<String, String> opposingClaims, Augmentation... augmentations)
+    {
+        List<SingleInstance> sorted = new ArrayList<>(base);
+        sorted.sort(null);
+
+        Set<Augmentation> unique = EnumSet.noneOf(Augmentation.class);
+        Collections.addAll(unique, augmentations);
+        if (unique.size() != augmentations.length) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: duplicate augmentations " + unique);
+        }
+
+        if (unique.contains(Augmentation.OPPOSING_CLAIM)) {
+            // fail now rather than in the middle of training
+            for (SingleInstance instance : sorted) {
+                if (!opposingClaims.containsKey(
+                        opposingClaimKey(instance.getDebateTitle(), instance.getClaim()))) {
+                    throw new IllegalArgumentException(
+                            "Invalid argument: no opposing claim for " + instance.getId());
+                }
+            }
+        }
+
+        return new AugmentedTrainingData(sorted, unique.toArray(new Augmentation[0]),
+                opposingClaims);
+    }
+
+    /**
+     * Loads the claims and their opposing claims ({@code train-opposing-claims.tsv} exported
+     * by {@code Step9aFinalDataProvider})
+     *
+     * @param file file
+     * @return opposing claims, keyed by debate title and claim
+     * @throws IOException           I/O exception
+     * @throws IllegalStateException if the file contains malformed lines
+     */
+    public static Map<String, String> loadOpposingClaims(File file)
+            throws IOException
+    {
+        Map<String, String> result = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
+                if (fields.length != 3) {
+                    throw new IllegalStateException(
+                            "Inconsistent input: expected 3 fields but got " + fields.length
+                                    + " in " + file + ": " + line);
+                }
+                result.put(opposingClaimKey(fields[0], fields[1]), fields[2]);
+            }
+        }
+
+        return result;
+    }
+
+    private static String opposingClaimKey(String debateTitle, String claim)
+    {
+        return debateTitle + "\t" + claim;
+    }
+
+    @Override
+    public int size()
+    {
+        return base.size() << augmentations.length;
+    }
+
+    /**
+     * Creates the element: the base instance {@code index >> augmentations} with the
+     * augmentations whose bits are set in the lower bits of the index
+     */
+    @Override
+    public SingleInstance get(int index)
+    {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+
+        SingleInstance instance = base.get(index >>> augmentations.length);
+        int variant = index & ((1 << augmentations.length) - 1);
+        if (variant == 0) {
+            return instance;
+        }
+
+        String warrant0 = instance.getWarrant0();
+        String warrant1 = instance.getWarrant1();
+        String claim = instance.getClaim();
+        int label = instance.getCorrectLabelW0orW1();
+
+        for (int i = 0; i < augmentations.length; i++) {
+            if ((variant & (1 << i)) == 0) {
+                continue;
+            }
+
+            switch (augmentations[i]) {
+            case SWAP_WARRANTS:
+                String tmp = warrant0;
+                warrant0 = warrant1;
+                warrant1 = tmp;
+                break;
+            case OPPOSING_CLAIM:
+                claim = opposingClaims
+                        .get(opposingClaimKey(instance.getDebateTitle(), instance.getClaim()));
+                break;
+            default:
+                throw new IllegalStateException("Unknown augmentation " + augmentations[i]);
+            }
+            label = 1 - label;
+        }
+
+        return new SingleInstance(instance.getId(), warrant0, warrant1, label,
+                instance.getReason(), claim, instance.getDebateTitle(),
+                instance.getDebateInfo());
+    }
+
+    /**
+     * Returns a view in a random order for the given epoch; the order depends only on the
+     * seed and the epoch, so it is the same in every run and each epoch gets a different
+     * one. Only the permutation of indices is allocated.
+     *
+     * @param seed  seed
+     * @param epoch epoch
+     * @return shuffled view
+     */
+    public List<SingleInstance> shuffled(long seed, int epoch)
+    {
+        int[] order = new int[size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Random random = new Random(seed * 0x9e3779b97f4a7c15L + epoch);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        return new AbstractList<SingleInstance>()
+        {
+            @Override
+            public SingleInstance get(int index)
+            {
+                return AugmentedTrainingData.this.get(order[index]);
+            }
+
+            @Override
+            public int size()
+            {
+                return order.length;
+            }
+        };
+    }
+}
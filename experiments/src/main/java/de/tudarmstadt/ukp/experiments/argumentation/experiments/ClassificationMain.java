@@ -18,17 +18,14 @@
 
 package de.tudarmstadt.ukp.experiments.argumentation.experiments;
 
-import org.apache.commons.io.IOUtils;
-
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.IntStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * (c) 2017 Ivan Habernal
@@ -38,33 +35,17 @@ public class ClassificationMain
     public static Set<SingleInstance> loadData(File file)
             throws IOException
     {
-        Set<SingleInstance> result = new HashSet<>();
-
-        List<String> lines = IOUtils
-                .readLines(new InputStreamReader(new FileInputStream(file), "utf-8"));
-
-        for (String line : lines) {
-            if (!line.startsWith("#")) {
-                result.add(new SingleInstance(line));
-            }
-        }
-
-        // make sure there are all instances (minus one for the comment line)
-        if (result.size() != (lines.size() - 1)) {
-            throw new IllegalStateException("Inconsistent input");
-        }
-
-        return result;
+        return TSVDataLoader.loadSet(file);
     }
 
     public static void runExperiment(Classifier classifier, File trainingData, File devData,
             File testData)
             throws IOException
     {
-        // load training data
-        Set<SingleInstance> training = loadData(trainingData);
-        Set<SingleInstance> dev = loadData(devData);
-        Set<SingleInstance> test = loadData(testData);
+        // load data (shared with other experiments on the same files)
+        Set<SingleInstance> training = ExperimentScheduler.getData(trainingData);
+        Set<SingleInstance> dev = ExperimentScheduler.getData(devData);
+        Set<SingleInstance> test = ExperimentScheduler.getData(testData);
 
         // train
         classifier.train(training);
@@ -91,17 +72,87 @@ public class ClassificationMain
         File devData = new File(mainDir, "dev.tsv");
         File testData = new File(mainDir, "test.tsv");
 
+        // number of experiments running in parallel
+        int threads = Integer.getInteger("experiments.threads",
+                Runtime.getRuntime().availableProcessors());
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+        ExperimentScheduler scheduler = new ExperimentScheduler(trainingData, devData,
+                testData);
+
+        // results of already finished experiments are re-used, if a directory is given
+        String resultsDirectory = System.getProperty("results");
+        ResultStore resultStore = null;
+        if (resultsDirectory != null) {
+            resultStore = new ResultStore(new File(resultsDirectory));
+            scheduler.setResultStore(resultStore);
+        }
+
         // random
-        IntStream.range(0, 3).parallel().forEach(value -> {
-            try {
-                runExperiment(new RandomClassifier((long) value), trainingData, devData, testData);
+        scheduler.addJobs("RandomClassifier", RandomClassifier::new,
+                RandomClassifier::configuration, 0, 1, 2);
+
+        // linear model with hashed features
+        scheduler.addJobs("HashedLinearClassifier", HashedLinearClassifier::new,
+                HashedLinearClassifier::defaultConfiguration, 0, 1, 2);
+
+        // the same, trained on the training data augmented lazily with swapped warrants and
+        // opposing claims (instead of reading train-w-swap-doubled.tsv)
+        File opposingClaimsFile = new File(mainDir, "train-opposing-claims.tsv");
+        Map<String, String> opposingClaims = AugmentedTrainingData
+                .loadOpposingClaims(opposingClaimsFile);
+        scheduler.addJobs("HashedLinearClassifier-augmented",
+                seed -> new HashedLinearClassifier(seed).setAugmentations(opposingClaims,
+                        AugmentedTrainingData.Augmentation.SWAP_WARRANTS,
+                        AugmentedTrainingData.Augmentation.OPPOSING_CLAIM),
+                new File[] { opposingClaimsFile }, 0, 1, 2);
+
+        // nearest neighbours in the embedding space, if embeddings are given
+        String embeddingsFile = System.getProperty("embeddings");
+        if (embeddingsFile != null) {
+            EmbeddingStore embeddings = EmbeddingStore.openOrConvert(new File(embeddingsFile));
+            scheduler.addJobs("NearestNeighbourClassifier",
+                    seed -> new NearestNeighbourClassifier(embeddings), 0);
+        }
+
+        try {
+            // LM loaded from an ARPA file, if given
+            if (args.length > 0) {
+                NGramLanguageModel languageModel = NGramLanguageModel
+                        .loadARPA(new File(args[0]));
+                scheduler.addJobs("LMClassifier", seed -> new LMClassifier(languageModel), 0);
+
+                printReport(scheduler.run(executorService), resultStore);
+                return;
             }
-            catch (IOException e) {
-                e.printStackTrace();
+
+            // LM, log-likelihoods are cached across runs; the model name (and version)
+            // identifies the cached values
+            String languageModelName = System.getProperty("lm.model",
+                    LMClassifier.DEFAULT_MODEL_NAME);
+            try (LogProbabilityCache cache = new LogProbabilityCache(
+                    new File(System.getProperty("java.io.tmpdir"), "arct-logprob.cache"))) {
+                scheduler.addJobs("LMClassifier",
+                        seed -> new LMClassifier("apu", 8090, languageModelName,
+                                LMClassifier.DEFAULT_MAX_REQUESTS_IN_FLIGHT,
+                                LMClassifier.DEFAULT_MAX_RETRIES, cache), 0);
+
+                printReport(scheduler.run(executorService), resultStore);
+                System.out.println(cache);
             }
-        });
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
 
-        // LM
-        runExperiment(new LMClassifier("apu", 8090), trainingData, devData, testData);
+    private static void printReport(List<ExperimentScheduler.ExperimentResult> results,
+            ResultStore resultStore)
+    {
+        System.out.print(ExperimentScheduler.formatReport(results));
+        if (resultStore != null) {
+            // hits and misses of this run
+            System.out.println(resultStore);
+        }
     }
 }
@@ -18,6 +18,11 @@
 
 package de.tudarmstadt.ukp.experiments.argumentation.experiments;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -25,6 +30,26 @@ import java.util.Set;
  */
 public abstract class Classifier
 {
+    /**
+     * Creates a trained classifier from the payload of a model file
+     */
+    interface ModelReader
+    {
+        Classifier read(ModelFile modelFile)
+                throws IOException;
+    }
+
+    /**
+     * Classifiers which can be loaded, by their class names
+     */
+    private static final Map<String, ModelReader> MODEL_READERS = new HashMap<>();
+
+    static {
+        MODEL_READERS.put(RandomClassifier.class.getName(), RandomClassifier::readModel);
+        MODEL_READERS
+                .put(HashedLinearClassifier.class.getName(), HashedLinearClassifier::readModel);
+    }
+
     public Set<PredictedInstance> predict(Set<SingleInstance> testData) {
         Set<PredictedInstance> result = makePredictions(testData);
 
@@ -35,7 +60,183 @@ public abstract class Classifier
         return result;
     }
 
+    /**
+     * Predicts labels for all instances of the dataset
+     *
+     * @param testData dataset
+     * @return predicted labels (0 or 1), indexed as the dataset
+     */
+    public byte[] predict(ColumnarDataset testData)
+    {
+        byte[] result = new byte[testData.size()];
+        makePredictions(testData, result);
+
+        return result;
+    }
+
+    /**
+     * Predicts labels for all instances and pushes them to the sink as they are made, without
+     * keeping them
+     *
+     * @param testData instances
+     * @param sink     sink
+     */
+    public void predict(Set<SingleInstance> testData, PredictionSink sink)
+    {
+        makePredictions(testData, sink);
+    }
+
+    /**
+     * Predicts labels for all instances of the dataset and pushes them to the sink as they are
+     * made, without keeping them
+     *
+     * @param testData dataset
+     * @param sink     sink
+     */
+    public void predict(ColumnarDataset testData, PredictionSink sink)
+    {
+        makePredictions(testData, sink);
+    }
+
     abstract protected Set<PredictedInstance> makePredictions(Set<SingleInstance> testData);
 
+    /**
+     * Pushes predictions to the sink; the default implementation delegates to
+     * {@link #makePredictions(Set)} (without scores), subclasses should override it to
+     * avoid creating the predicted instances
+     *
+     * @param testData instances
+     * @param sink     sink
+     */
+    protected void makePredictions(Set<SingleInstance> testData, PredictionSink sink)
+    {
+        for (PredictedInstance predictedInstance : makePredictions(testData)) {
+            sink.accept(predictedInstance.getId(), predictedInstance.getPredictedLabelW0orW1(),
+                    Double.NaN);
+        }
+    }
+
+    /**
+     * Pushes predictions to the sink; the default implementation delegates to
+     * {@link #makePredictions(ColumnarDataset, byte[])} (without scores)
+     *
+     * @param testData dataset
+     * @param sink     sink
+     */
+    protected void makePredictions(ColumnarDataset testData, PredictionSink sink)
+    {
+        byte[] predictions = new byte[testData.size()];
+        makePredictions(testData, predictions);
+
+        for (int i = 0; i < predictions.length; i++) {
+            sink.accept(testData.getId(i), predictions[i], Double.NaN);
+        }
+    }
+
+    /**
+     * Fills in the predicted labels; the default implementation materializes all instances
+     * and delegates to {@link #makePredictions(Set)}, subclasses should override it to work
+     * directly on the columns. Instances with duplicate IDs get the same prediction.
+     *
+     * @param testData    dataset
+     * @param predictions output, indexed as the dataset
+     */
+    protected void makePredictions(ColumnarDataset testData, byte[] predictions)
+    {
+        Set<SingleInstance> instances = new HashSet<>();
+        for (int i = 0; i < testData.size(); i++) {
+            instances.add(testData.getInstance(i));
+        }
+
+        Map<String, Integer> predictedLabels = new HashMap<>();
+        for (PredictedInstance predictedInstance : makePredictions(instances)) {
+            predictedLabels
+                    .put(predictedInstance.getId(), predictedInstance.getPredictedLabelW0orW1());
+        }
+
+        for (int i = 0; i < testData.size(); i++) {
+            predictions[i] = predictedLabels.get(testData.getId(i)).byteValue();
+        }
+    }
+
     abstract void train(Set<SingleInstance> trainingData);
+
+    /**
+     * Describes the classifier with all parameters which influence its predictions; two
+     * classifiers with the same configuration trained on the same data are expected to make
+     * the same predictions (see {@link ResultStore}). Classifiers with parameters must
+     * override it.
+     *
+     * @return configuration
+     */
+    public String getConfiguration()
+    {
+        return getClass().getName();
+    }
+
+    /**
+     * @return true if the classifier can be saved by {@link #save(File)}
+     */
+    public boolean isSaveable()
+    {
+        return false;
+    }
+
+    /**
+     * Saves the trained classifier into a {@link ModelFile}
+     *
+     * @param file output
+     * @throws IOException                   I/O exception
+     * @throws UnsupportedOperationException if the classifier cannot be saved
+     */
+    public void save(File file)
+            throws IOException
+    {
+        if (!isSaveable()) {
+            throw new UnsupportedOperationException(getClass().getName() + " cannot be saved");
+        }
+
+        ModelFile.write(file, this);
+    }
+
+    /**
+     * Writes the classifier-specific payload; must be overridden by classifiers which are
+     * saveable (and have a {@link ModelReader} registered)
+     *
+     * @param writer output
+     * @throws IOException I/O exception
+     */
+    protected void writeModel(ModelFile.Writer writer)
+            throws IOException
+    {
+        throw new UnsupportedOperationException(getClass().getName() + " cannot be saved");
+    }
+
+    /**
+     * Loads a classifier saved by {@link #save(File)}; the file is memory-mapped, so loading
+     * takes milliseconds regardless of the model size
+     *
+     * @param file model file
+     * @return trained classifier
+     * @throws IOException if the file is not a model file or its classifier is unknown
+     */
+    public static Classifier load(File file)
+            throws IOException
+    {
+        ModelFile modelFile = ModelFile.open(file);
+        ModelReader reader = MODEL_READERS.get(modelFile.getClassName());
+        if (reader == null) {
+            throw new IOException(
+                    "Unknown classifier " + modelFile.getClassName() + " in " + file);
+        }
+
+        Classifier result = reader.read(modelFile);
+        if (!result.getConfiguration().equals(modelFile.getConfiguration())) {
+            throw new IllegalStateException(
+                    "Inconsistent input: configuration " + modelFile.getConfiguration()
+                            + " loaded as " + result.getConfiguration());
+        }
+
+        return result;
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable column-oriented collection of instances, accessed by index. Debate metadata is
+ * dictionary-encoded (one title and description per debate, instances refer to it by an int
+ * id), all texts are deduplicated so each distinct string is stored once, and gold labels are
+ * kept in a {@code byte[]}.
+ *
+ * @author Ivan Habernal
+ */
+public class ColumnarDataset
+{
+    private final String[] ids;
+    private final String[] warrants0;
+    private final String[] warrants1;
+    private final String[] reasons;
+    private final String[] claims;
+    private final byte[] labels;
+    private final int[] debateIds;
+
+    private final String[] debateTitles;
+    private final String[] debateInfos;
+
+    private ColumnarDataset(Builder builder)
+    {
+        int size = builder.ids.size();
+        ids = builder.ids.toArray(new String[size]);
+        warrants0 = builder.warrants0.toArray(new String[size]);
+        warrants1 = builder.warrants1.toArray(new String[size]);
+        reasons = builder.reasons.toArray(new String[size]);
+        claims = builder.claims.toArray(new String[size]);
+        labels = Arrays.copyOf(builder.labels, size);
+        debateIds = Arrays.copyOf(builder.debateIds, size);
+
+        debateTitles = builder.debateTitles.toArray(new String[builder.debateTitles.size()]);
+        debateInfos = builder.debateInfos.toArray(new String[builder.debateInfos.size()]);
+    }
+
+    /**
+     * Creates a dataset; instances are sorted by their IDs so the order does not depend on
+     * the iteration order of the collection
+     *
+     * @param instances instances
+     * @return dataset
+     */
+    public static ColumnarDataset fromInstances(Collection<? extends SingleInstance> instances)
+    {
+        List<SingleInstance> sorted = new ArrayList<>(instances);
+        sorted.sort(null);
+
+        Builder builder = new Builder();
+        for (SingleInstance instance : sorted) {
+            builder.add(instance.getId(), instance.getWarrant0(), instance.getWarrant1(),
+                    instance.getCorrectLabelW0orW1(), instance.getReason(), instance.getClaim(),
+                    instance.getDebateTitle(), instance.getDebateInfo());
+        }
+
+        return builder.build();
+    }
+
+    public int size()
+    {
+        return ids.length;
+    }
+
+    public String getId(int index)
+    {
+        return ids[index];
+    }
+
+    public String getWarrant0(int index)
+    {
+        return warrants0[index];
+    }
+
+    public String getWarrant1(int index)
+    {
+        return warrants1[index];
+    }
+
+    /**
+     * @param index   instance index
+     * @param warrant 0 or 1
+     * @return warrant0 or warrant1
+     */
+    public String getWarrant(int index, int warrant)
+    {
+        return warrant == 0 ? warrants0[index] : warrants1[index];
+    }
+
+    public int getCorrectLabelW0orW1(int index)
+    {
+        return labels[index];
+    }
+
+    public String getReason(int index)
+    {
+        return reasons[index];
+    }
+
+    public String getClaim(int index)
+    {
+        return claims[index];
+    }
+
+    /**
+     * @param index instance index
+     * @return id of the debate, between 0 and {@link #getNumberOfDebates()}
+     */
+    public int getDebateId(int index)
+    {
+        return debateIds[index];
+    }
+
+    public String getDebateTitle(int index)
+    {
+        return debateTitles[debateIds[index]];
+    }
+
+    public String getDebateInfo(int index)
+    {
+        return debateInfos[debateIds[index]];
+    }
+
+    public int getNumberOfDebates()
+    {
+        return debateTitles.length;
+    }
+
+    /**
+     * @param debateId debate id
+     * @return title of the debate
+     */
+    public String getDebateTitleById(int debateId)
+    {
+        return debateTitles[debateId];
+    }
+
+    /**
+     * Materializes a single instance (allocates a new object)
+     *
+     * @param index index
+     * @return instance
+     */
+    public SingleInstance getInstance(int index)
+    {
+        return new SingleInstance(ids[index], warrants0[index], warrants1[index],
+                (int) labels[index], reasons[index], claims[index], getDebateTitle(index),
+                getDebateInfo(index));
+    }
+
+    /**
+     * Builder which deduplicates texts and assigns debate ids while adding instances
+     */
+    public static class Builder
+    {
+        private final List<String> ids = new ArrayList<>();
+        private final List<String> warrants0 = new ArrayList<>();
+        private final List<String> warrants1 = new ArrayList<>();
+        private final List<String> reasons = new ArrayList<>();
+        private final List<String> claims = new ArrayList<>();
+        private byte[] labels = new byte[16];
+        private int[] debateIds = new int[16];
+
+        private final List<String> debateTitles = new ArrayList<>();
+        private final List<String> debateInfos = new ArrayList<>();
+        private final Map<String, Integer> debateIdsByTitle = new HashMap<>();
+        private final Map<String, String> texts = new HashMap<>();
+
+        /**
+         * Adds an instance; the parameters are validated as in {@link SingleInstance}
+         */
+        public Builder add(String id, String warrant0, String warrant1,
+                Integer correctLabelW0orW1, String reason, String claim, String debateTitle,
+                String debateInfo)
+        {
+            SingleInstance.validate(id, warrant0, warrant1, correctLabelW0orW1, reason, claim,
+                    debateTitle, debateInfo);
+
+            int index = ids.size();
+            if (index == labels.length) {
+                labels = Arrays.copyOf(labels, index * 2);
+                debateIds = Arrays.copyOf(debateIds, index * 2);
+            }
+
+            ids.add(id);
+            warrants0.add(dedup(warrant0));
+            warrants1.add(dedup(warrant1));
+            reasons.add(dedup(reason));
+            claims.add(dedup(claim));
+            labels[index] = correctLabelW0orW1.byteValue();
+
+            Integer debateId = debateIdsByTitle.get(debateTitle);
+            if (debateId == null) {
+                debateId = debateTitles.size();
+                debateIdsByTitle.put(debateTitle, debateId);
+                debateTitles.add(debateTitle);
+                debateInfos.add(dedup(debateInfo));
+            }
+            debateIds[index] = debateId;
+
+            return this;
+        }
+
+        public ColumnarDataset build()
+        {
+            return new ColumnarDataset(this);
+        }
+
+        private String dedup(String text)
+        {
+            String existing = texts.putIfAbsent(text, text);
+            return existing != null ? existing : text;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * k-fold cross-validation where all instances of a debate fall into the same fold, so, as in
+ * the train/dev/test split of {@code Step9aFinalDataProvider} (by year of the debate), no
+ * debate is shared between training and test data. The year is not part of the exported
+ * instances, so the folds are made of whole debates. Folds depend only on the data and the
+ * seed; each fold is trained and evaluated as a separate task on a fork/join pool.
+ *
+ * @author Ivan Habernal
+ */
+public class CrossValidation
+{
+    private final List<Set<SingleInstance>> folds;
+
+    /**
+     * Splits the data into folds: debates are shuffled with the seed and each debate is put
+     * into the fold with the fewest instances so far (the first one on ties)
+     *
+     * @param data          instances
+     * @param numberOfFolds number of folds, at least 2 and at most the number of debates
+     * @param seed          random seed
+     */
+    public CrossValidation(Collection<SingleInstance> data, int numberOfFolds, long seed)
+    {
+        // sorted, so the shuffle does not depend on the iteration order of the data
+        Map<String, List<SingleInstance>> debates = new TreeMap<>();
+        for (SingleInstance instance : data) {
+            debates.putIfAbsent(instance.getDebateTitle(), new ArrayList<>());
+            debates.get(instance.getDebateTitle()).add(instance);
+        }
+
+        if (numberOfFolds < 2 || numberOfFolds > debates.size()) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: " + numberOfFolds + " folds for " + debates.size()
+                            + " debates");
+        }
+
+        List<String> debateTitles = new ArrayList<>(debates.keySet());
+        Collections.shuffle(debateTitles, new Random(seed));
+
+        folds = new ArrayList<>(numberOfFolds);
+        for (int i = 0; i < numberOfFolds; i++) {
+            folds.add(new HashSet<>());
+        }
+
+        for (String debateTitle : debateTitles) {
+            Set<SingleInstance> smallest = folds.get(0);
+            for (Set<SingleInstance> fold : folds) {
+                if (fold.size() < smallest.size()) {
+                    smallest = fold;
+                }
+            }
+            smallest.addAll(debates.get(debateTitle));
+        }
+    }
+
+    /**
+     * @return folds (unmodifiable)
+     */
+    public List<Set<SingleInstance>> getFolds()
+    {
+        List<Set<SingleInstance>> result = new ArrayList<>();
+        for (Set<SingleInstance> fold : folds) {
+            result.add(Collections.unmodifiableSet(fold));
+        }
+        return result;
+    }
+
+    /**
+     * Trains a new classifier on all but one fold and evaluates it on that fold, for every
+     * fold in parallel
+     *
+     * @param factory creates a classifier for each fold; the seed is the fold index
+     * @param pool    pool
+     * @return accuracy on each fold
+     */
+    public double[] run(ExperimentScheduler.ClassifierFactory factory, ForkJoinPool pool)
+    {
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int i = 0; i < folds.size(); i++) {
+            int testFold = i;
+            tasks.add(() -> runFold(factory.create(testFold), testFold));
+        }
+
+        double[] result = new double[folds.size()];
+        try {
+            List<Future<Double>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < result.length; i++) {
+                result[i] = futures.get(i).get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Fold failed", e.getCause());
+        }
+
+        return result;
+    }
+
+    private double runFold(Classifier classifier, int testFold)
+    {
+        Set<SingleInstance> training = new HashSet<>();
+        for (int i = 0; i < folds.size(); i++) {
+            if (i != testFold) {
+                training.addAll(folds.get(i));
+            }
+        }
+
+        classifier.train(training);
+
+        StreamingEvaluator evaluator = new StreamingEvaluator(folds.get(testFold));
+        classifier.predict(folds.get(testFold), evaluator);
+
+        if (!evaluator.isComplete()) {
+            throw new IllegalStateException(
+                    "Classifier returned " + evaluator.getNumberOfPredictions()
+                            + " predictions for " + folds.get(testFold).size() + " instances");
+        }
+
+        return evaluator.getAccuracy();
+    }
+
+    /**
+     * Formats the accuracy of each fold, their mean and (sample) variance
+     *
+     * @param name       name of the classifier
+     * @param accuracies accuracies
+     * @return single line
+     */
+    public static String formatResult(String name, double[] accuracies)
+    {
+        double mean = ExperimentScheduler.mean(accuracies);
+        double standardDeviation = ExperimentScheduler.standardDeviation(accuracies);
+
+        StringBuilder sb = new StringBuilder(name);
+        for (double accuracy : accuracies) {
+            sb.append(String.format(Locale.ENGLISH, "\t%.3f", accuracy));
+        }
+        sb.append(String.format(Locale.ENGLISH, "\tmean=%.3f\tvariance=%.5f", mean,
+                standardDeviation * standardDeviation));
+
+        return sb.toString();
+    }
+
+    /**
+     * 10-fold cross-validation on the training and dev data
+     */
+    public static void main(String[] args)
+            throws IOException
+    {
+        File mainDir = new File("mturk/annotation-task/data/final");
+        Set<SingleInstance> data = new HashSet<>();
+        data.addAll(ExperimentScheduler.getData(new File(mainDir, "train.tsv")));
+        data.addAll(ExperimentScheduler.getData(new File(mainDir, "dev.tsv")));
+
+        CrossValidation crossValidation = new CrossValidation(data, 10, 0);
+        ForkJoinPool pool = new ForkJoinPool(Integer.getInteger("experiments.threads",
+                Runtime.getRuntime().availableProcessors()));
+
+        try {
+            System.out.println(formatResult("RandomClassifier",
+                    crossValidation.run(RandomClassifier::new, pool)));
+            System.out.println(formatResult("HashedLinearClassifier",
+                    crossValidation.run(HashedLinearClassifier::new, pool)));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read-only word embeddings in a memory-mapped binary file. Text vectors (GloVe, or word2vec
+ * in the text format with the "count dimension" header line) are converted once by
+ * {@link #convert(File, File)}; opening the binary file then only maps it, so it is nearly
+ * instant and several processes share the vectors in the page cache.
+ * <p>
+ * Words are looked up by their 64-bit hash in an open-addressing table stored in the file
+ * (hash collisions are not checked, as in {@link NGramLanguageModel}); a lookup returns the
+ * row of the vector, whose values are at {@link #getOffset(int)} in the shared read-only
+ * {@link FloatBuffer} returned by {@link #getVectors(int)}. Use only absolute {@code get}
+ * methods on the buffer, so the store can be used from several threads.
+ * <p>
+ * File layout (little-endian): 64 bytes header; vectors (rows x dimension floats); hash
+ * table (capacity longs with the word hashes, 0 = empty slot, then capacity ints with the
+ * rows); word offsets (rows + 1 ints) followed by the words in UTF-8.
+ *
+ * @author Ivan Habernal
+ */
+public class EmbeddingStore
+        implements Closeable
+{
+    private static final long MAGIC = 0x415243544542454dL;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final RandomAccessFile file;
+    private final String description;
+    private final int dimension;
+    private final int size;
+    private final int rowsPerChunk;
+    private final FloatBuffer[] vectorChunks;
+
+    private final LongBuffer tableKeys;
+    private final IntBuffer tableRows;
+    private final int tableMask;
+
+    private final IntBuffer wordOffsets;
+    private final ByteBuffer words;
+
+    private EmbeddingStore(File binaryFile)
+            throws IOException
+    {
+        file = new RandomAccessFile(binaryFile, "r");
+        description = binaryFile.getAbsolutePath() + ", " + binaryFile.length()
+                + " bytes, modified " + binaryFile.lastModified();
+        FileChannel channel = file.getChannel();
+
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+                throw new IOException("Not an embedding file: " + binaryFile);
+            }
+
+            dimension = header.getInt(12);
+            size = header.getInt(16);
+            int tableCapacity = header.getInt(20);
+            long tableOffset = header.getLong(24);
+            long wordsOffset = header.getLong(32);
+
+            // a single mapping is limited to 2 GB
+            rowsPerChunk = Math.max(1, (Integer.MAX_VALUE - 8) / (dimension * 4));
+            int chunks = (size + rowsPerChunk - 1) / rowsPerChunk;
+            vectorChunks = new FloatBuffer[chunks];
+            for (int c = 0; c < chunks; c++) {
+                long rows = Math.min(rowsPerChunk, size - (long) c * rowsPerChunk);
+                vectorChunks[c] = map(channel,
+                        HEADER_SIZE + (long) c * rowsPerChunk * dimension * 4,
+                        rows * dimension * 4).asFloatBuffer().asReadOnlyBuffer();
+            }
+
+            tableKeys = map(channel, tableOffset, (long) tableCapacity * 8).asLongBuffer();
+            tableRows = map(channel, tableOffset + (long) tableCapacity * 8,
+                    (long) tableCapacity * 4).asIntBuffer();
+            tableMask = tableCapacity - 1;
+
+            wordOffsets = map(channel, wordsOffset, (long) (size + 1) * 4).asIntBuffer();
+            long wordsStart = wordsOffset + (long) (size + 1) * 4;
+            words = map(channel, wordsStart, channel.size() - wordsStart);
+        }
+        catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long length)
+            throws IOException
+    {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Opens a binary file created by {@link #convert(File, File)}
+     *
+     * @param binaryFile file
+     * @return store
+     * @throws IOException if the file is not an embedding file
+     */
+    public static EmbeddingStore open(File binaryFile)
+            throws IOException
+    {
+        return new EmbeddingStore(binaryFile);
+    }
+
+    /**
+     * Opens the binary version of the text vectors ({@code textFile.bin} next to it),
+     * converting them first if the binary file does not exist or is older
+     *
+     * @param textFile text vectors
+     * @return store
+     * @throws IOException I/O exception
+     */
+    public static EmbeddingStore openOrConvert(File textFile)
+            throws IOException
+    {
+        File binaryFile = new File(textFile.getPath() + ".bin");
+        if (!binaryFile.exists() || binaryFile.lastModified() < textFile.lastModified()) {
+            convert(textFile, binaryFile);
+        }
+
+        return open(binaryFile);
+    }
+
+    /**
+     * Converts text vectors (one word per line followed by the values separated by spaces;
+     * optional word2vec header; may be gzipped if the name ends with {@code .gz}) into the
+     * binary format. If a word occurs several times, the first vector is used.
+     *
+     * @param textFile   text vectors
+     * @param binaryFile output
+     * @throws IOException I/O exception or malformed file
+     */
+    public static void convert(File textFile, File binaryFile)
+            throws IOException
+    {
+        InputStream is = new FileInputStream(textFile);
+        if (textFile.getName().endsWith(".gz")) {
+            is = new GZIPInputStream(is);
+        }
+
+        File tmpFile = new File(binaryFile.getPath() + ".tmp");
+        List<String> wordList = new ArrayList<>();
+        long[] hashes = new long[1024];
+        int dimension = -1;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(is, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+                RandomAccessFile out = new RandomAccessFile(tmpFile, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            channel.position(HEADER_SIZE);
+
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] fields = line.trim().split(" ");
+
+                // word2vec header
+                if (lineNumber == 1 && fields.length == 2) {
+                    continue;
+                }
+                if (fields.length < 2) {
+                    continue;
+                }
+                if (dimension < 0) {
+                    dimension = fields.length - 1;
+                }
+
+                // some words contain spaces, the vector is always at the end
+                int wordFields = fields.length - dimension;
+                if (wordFields < 1) {
+                    throw new IOException(
+                            "Expected " + dimension + " values on line " + lineNumber + " in "
+                                    + textFile);
+                }
+                String word = wordFields == 1 ?
+                        fields[0] :
+                        String.join(" ", Arrays.copyOf(fields, wordFields));
+
+                if (buffer.remaining() < dimension * 4) {
+                    flush(buffer, channel);
+                }
+                for (int i = wordFields; i < fields.length; i++) {
+                    buffer.putFloat(Float.parseFloat(fields[i]));
+                }
+
+                if (wordList.size() == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+                hashes[wordList.size()] = hash(word);
+                wordList.add(word);
+            }
+            flush(buffer, channel);
+
+            if (dimension < 0) {
+                throw new IOException("No vectors in " + textFile);
+            }
+
+            // hash table, load factor at most 0.5
+            int size = wordList.size();
+            int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+            long[] keys = new long[capacity];
+            int[] rows = new int[capacity];
+            for (int row = 0; row < size; row++) {
+                int slot = (int) hashes[row] & (capacity - 1);
+                while (keys[slot] != 0 && keys[slot] != hashes[row]) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                // keep the first occurrence
+                if (keys[slot] == 0) {
+                    keys[slot] = hashes[row];
+                    rows[slot] = row;
+                }
+            }
+
+            long tableOffset = channel.position();
+            for (long key : keys) {
+                if (buffer.remaining() < 8) {
+                    flush(buffer, channel);
+                }
+                buffer.putLong(key);
+            }
+            for (int row : rows) {
+                if (buffer.remaining() < 4) {
+                    flush(buffer, channel);
+                }
+                buffer.putInt(row);
+            }
+            flush(buffer, channel);
+
+            // words
+            long wordsOffset = channel.position();
+            List<byte[]> encodedWords = new ArrayList<>(size);
+            int offset = 0;
+            buffer.putInt(offset);
+            for (String word : wordList) {
+                byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                encodedWords.add(bytes);
+                offset += bytes.length;
+                if (buffer.remaining() < 4) {
+                    flush(buffer, channel);
+                }
+                buffer.putInt(offset);
+            }
+            for (byte[] bytes : encodedWords) {
+                if (buffer.remaining() < bytes.length) {
+                    flush(buffer, channel);
+                }
+                buffer.put(bytes);
+            }
+            flush(buffer, channel);
+
+            // header last, so an interrupted conversion leaves no valid file
+            buffer.putLong(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(dimension);
+            buffer.putInt(size);
+            buffer.putInt(capacity);
+            buffer.putLong(tableOffset);
+            buffer.putLong(wordsOffset);
+            buffer.flip();
+            channel.write(buffer, 0);
+        }
+
+        if (binaryFile.exists() && !binaryFile.delete()) {
+            throw new IOException("Cannot overwrite " + binaryFile);
+        }
+        if (!tmpFile.renameTo(binaryFile)) {
+            throw new IOException("Cannot rename " + tmpFile + " to " + binaryFile);
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel)
+            throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Hash of a word, never 0
+     */
+    private static long hash(String word)
+    {
+        long result = NGramLanguageModel.wordHash(word, 0, word.length());
+        return result == 0 ? 1 : result;
+    }
+
+    /**
+     * @param word word
+     * @return row of the word's vector or -1 if the word is unknown
+     */
+    public int getRow(String word)
+    {
+        long key = hash(word);
+        int slot = (int) key & tableMask;
+        long slotKey;
+        while ((slotKey = tableKeys.get(slot)) != 0) {
+            if (slotKey == key) {
+                return tableRows.get(slot);
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Shared read-only buffer with the vector of the row; use absolute gets only
+     *
+     * @param row row
+     * @return buffer
+     */
+    public FloatBuffer getVectors(int row)
+    {
+        return vectorChunks[row / rowsPerChunk];
+    }
+
+    /**
+     * @param row row
+     * @return offset of the first value of the row in {@link #getVectors(int)}
+     */
+    public int getOffset(int row)
+    {
+        return (row % rowsPerChunk) * dimension;
+    }
+
+    /**
+     * Adds the word's vector to the given array
+     *
+     * @param word word
+     * @param sum  array of {@link #getDimension()} values
+     * @return false if the word is unknown (the array is unchanged)
+     */
+    public boolean addVector(String word, float[] sum)
+    {
+        int row = getRow(word);
+        if (row < 0) {
+            return false;
+        }
+
+        FloatBuffer vectors = getVectors(row);
+        int offset = getOffset(row);
+        for (int i = 0; i < dimension; i++) {
+            sum[i] += vectors.get(offset + i);
+        }
+        return true;
+    }
+
+    /**
+     * @param word word
+     * @return a copy of the word's vector or null if the word is unknown
+     */
+    public float[] getVector(String word)
+    {
+        float[] result = new float[dimension];
+        return addVector(word, result) ? result : null;
+    }
+
+    /**
+     * @param row row
+     * @return word of the row
+     */
+    public String getWord(int row)
+    {
+        int start = wordOffsets.get(row);
+        byte[] bytes = new byte[wordOffsets.get(row + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = words.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getDimension()
+    {
+        return dimension;
+    }
+
+    /**
+     * @return number of rows (vectors)
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the binary file (path, size and modification time)
+     */
+    @Override
+    public String toString()
+    {
+        return "EmbeddingStore(" + description + ")";
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        // the mappings stay valid until garbage collected
+        file.close();
+    }
+}
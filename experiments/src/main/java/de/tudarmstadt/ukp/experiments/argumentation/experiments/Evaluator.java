@@ -18,13 +18,71 @@
 
 package de.tudarmstadt.ukp.experiments.argumentation.experiments;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * (c) 2017 Ivan Habernal
  */
 public class Evaluator
 {
+    /**
+     * Resamples processed by a single fork/join task
+     */
+    private static final int RESAMPLES_PER_TASK = 256;
+
+    /**
+     * Result of a paired significance test of two classifiers on the same instances
+     */
+    public static class SignificanceResult
+    {
+        public final double accuracyA;
+        public final double accuracyB;
+        public final double pValue;
+
+        /**
+         * 95% confidence interval of accuracy(A) - accuracy(B); only for the bootstrap test,
+         * NaN otherwise
+         */
+        public final double differenceLower;
+        public final double differenceUpper;
+        public final int resamples;
+
+        SignificanceResult(double accuracyA, double accuracyB, double pValue,
+                double differenceLower, double differenceUpper, int resamples)
+        {
+            this.accuracyA = accuracyA;
+            this.accuracyB = accuracyB;
+            this.pValue = pValue;
+            this.differenceLower = differenceLower;
+            this.differenceUpper = differenceUpper;
+            this.resamples = resamples;
+        }
+
+        public double getDifference()
+        {
+            return accuracyA - accuracyB;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ENGLISH,
+                    "acc_A=%.3f, acc_B=%.3f, diff=%.3f, 95%% CI=[%.3f, %.3f], p=%.4f (%d resamples)",
+                    accuracyA, accuracyB, getDifference(), differenceLower, differenceUpper,
+                    pValue, resamples);
+        }
+    }
+
     public static double computeAccuracy(Set<PredictedInstance> predictedInstances)
     {
         int correctPredictions = 0;
@@ -38,4 +96,339 @@ public class Evaluator
 
         return (double) correctPredictions / (double) predictedInstances.size();
     }
+
+    /**
+     * Accuracy of predictions made on a columnar dataset
+     *
+     * @param data            dataset with gold labels
+     * @param predictedLabels predicted labels, indexed as the dataset
+     * @return accuracy
+     */
+    public static double computeAccuracy(ColumnarDataset data, byte[] predictedLabels)
+    {
+        if (predictedLabels.length != data.size()) {
+            throw new IllegalArgumentException(
+                    "Expected " + data.size() + " predictions but got " + predictedLabels.length);
+        }
+
+        int correctPredictions = 0;
+
+        for (int i = 0; i < predictedLabels.length; i++) {
+            if (predictedLabels[i] == data.getCorrectLabelW0orW1(i)) {
+                correctPredictions++;
+            }
+        }
+
+        return (double) correctPredictions / (double) predictedLabels.length;
+    }
+
+    /**
+     * Paired bootstrap test of the accuracy difference (Berg-Kirkpatrick et al., 2012) on the
+     * common fork/join pool; see {@link #pairedBootstrap(boolean[], boolean[], int, long,
+     * ForkJoinPool)}
+     *
+     * @param predictionsA predictions of classifier A
+     * @param predictionsB predictions of classifier B on the same instances
+     * @param resamples    number of bootstrap samples
+     * @param seed         random seed
+     * @return result with two-sided p-value and 95% confidence interval of the difference
+     */
+    public static SignificanceResult pairedBootstrap(Set<PredictedInstance> predictionsA,
+            Set<PredictedInstance> predictionsB, int resamples, long seed)
+    {
+        List<boolean[]> correct = alignCorrectness(predictionsA, predictionsB);
+        return pairedBootstrap(correct.get(0), correct.get(1), resamples, seed,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Approximate randomization test of the accuracy difference on the common fork/join pool;
+     * see {@link #approximateRandomization(boolean[], boolean[], int, long, ForkJoinPool)}
+     *
+     * @param predictionsA predictions of classifier A
+     * @param predictionsB predictions of classifier B on the same instances
+     * @param resamples    number of random shuffles
+     * @param seed         random seed
+     * @return result with two-sided p-value
+     */
+    public static SignificanceResult approximateRandomization(
+            Set<PredictedInstance> predictionsA, Set<PredictedInstance> predictionsB,
+            int resamples, long seed)
+    {
+        List<boolean[]> correct = alignCorrectness(predictionsA, predictionsB);
+        return approximateRandomization(correct.get(0), correct.get(1), resamples, seed,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Paired bootstrap test on the common fork/join pool
+     *
+     * @param data         dataset with gold labels
+     * @param predictionsA predicted labels of classifier A, indexed as the dataset
+     * @param predictionsB predicted labels of classifier B, indexed as the dataset
+     * @param resamples    number of bootstrap samples
+     * @param seed         random seed
+     * @return result
+     */
+    public static SignificanceResult pairedBootstrap(ColumnarDataset data, byte[] predictionsA,
+            byte[] predictionsB, int resamples, long seed)
+    {
+        return pairedBootstrap(correctness(data, predictionsA), correctness(data, predictionsB),
+                resamples, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Approximate randomization test on the common fork/join pool
+     *
+     * @param data         dataset with gold labels
+     * @param predictionsA predicted labels of classifier A, indexed as the dataset
+     * @param predictionsB predicted labels of classifier B, indexed as the dataset
+     * @param resamples    number of random shuffles
+     * @param seed         random seed
+     * @return result
+     */
+    public static SignificanceResult approximateRandomization(ColumnarDataset data,
+            byte[] predictionsA, byte[] predictionsB, int resamples, long seed)
+    {
+        return approximateRandomization(correctness(data, predictionsA),
+                correctness(data, predictionsB), resamples, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Paired bootstrap test. Each sample draws n instances with replacement and computes the
+     * accuracy difference; the p-value is the fraction of samples whose difference deviates
+     * from the observed one by at least the observed difference (the bootstrap distribution
+     * shifted to the null hypothesis). Every sample has its own random generator seeded by
+     * the seed and the sample index, so the result does not depend on the parallelism.
+     *
+     * @param correctA  whether classifier A predicted instance i correctly
+     * @param correctB  whether classifier B predicted instance i correctly
+     * @param resamples number of bootstrap samples
+     * @param seed      random seed
+     * @param pool      pool to run on
+     * @return result with two-sided p-value and 95% confidence interval of the difference
+     */
+    public static SignificanceResult pairedBootstrap(boolean[] correctA, boolean[] correctB,
+            int resamples, long seed, ForkJoinPool pool)
+    {
+        checkArguments(correctA, correctB, resamples);
+
+        int n = correctA.length;
+        // per-instance difference: -1, 0, or 1
+        int[] delta = new int[n];
+        for (int i = 0; i < n; i++) {
+            delta[i] = (correctA[i] ? 1 : 0) - (correctB[i] ? 1 : 0);
+        }
+
+        double[] differences = new double[resamples];
+        pool.invoke(new ResampleTask(0, resamples, sample -> {
+            SplittableRandom random = sampleRandom(seed, sample);
+            int sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += delta[random.nextInt(n)];
+            }
+            differences[sample] = (double) sum / n;
+        }));
+
+        double observed = accuracy(correctA) - accuracy(correctB);
+        int extreme = 0;
+        for (double difference : differences) {
+            if (Math.abs(difference - observed) >= Math.abs(observed) - 1e-12) {
+                extreme++;
+            }
+        }
+
+        Arrays.sort(differences);
+
+        return new SignificanceResult(accuracy(correctA), accuracy(correctB),
+                (extreme + 1.0) / (resamples + 1.0), percentile(differences, 0.025),
+                percentile(differences, 0.975), resamples);
+    }
+
+    /**
+     * Approximate randomization (paired permutation) test. Each shuffle swaps the outputs of
+     * A and B on every instance with probability 0.5; only instances where exactly one of
+     * them is correct change the difference. Every shuffle has its own random generator
+     * seeded by the seed and the shuffle index, so the result does not depend on the
+     * parallelism.
+     *
+     * @param correctA  whether classifier A predicted instance i correctly
+     * @param correctB  whether classifier B predicted instance i correctly
+     * @param resamples number of random shuffles
+     * @param seed      random seed
+     * @param pool      pool to run on
+     * @return result with two-sided p-value (no confidence interval)
+     */
+    public static SignificanceResult approximateRandomization(boolean[] correctA,
+            boolean[] correctB, int resamples, long seed, ForkJoinPool pool)
+    {
+        checkArguments(correctA, correctB, resamples);
+
+        // instances where only A is correct (+1) or only B is correct (-1)
+        int onlyA = 0;
+        int onlyB = 0;
+        for (int i = 0; i < correctA.length; i++) {
+            if (correctA[i] && !correctB[i]) {
+                onlyA++;
+            }
+            else if (!correctA[i] && correctB[i]) {
+                onlyB++;
+            }
+        }
+        int discordant = onlyA + onlyB;
+        int observed = Math.abs(onlyA - onlyB);
+
+        boolean[] extreme = new boolean[resamples];
+        pool.invoke(new ResampleTask(0, resamples, sample -> {
+            SplittableRandom random = sampleRandom(seed, sample);
+            // a discordant instance contributes +1 or -1 and a swap flips the sign, so the
+            // shuffled difference is a sum of fair +-1 coins: 2 * heads - discordant;
+            // the coins are drawn 64 at a time
+            int heads = 0;
+            int remaining = discordant;
+            while (remaining >= 64) {
+                heads += Long.bitCount(random.nextLong());
+                remaining -= 64;
+            }
+            if (remaining > 0) {
+                heads += Long.bitCount(random.nextLong() & ((1L << remaining) - 1));
+            }
+            extreme[sample] = Math.abs(2 * heads - discordant) >= observed;
+        }));
+
+        int extremeCount = 0;
+        for (boolean e : extreme) {
+            if (e) {
+                extremeCount++;
+            }
+        }
+
+        return new SignificanceResult(accuracy(correctA), accuracy(correctB),
+                (extremeCount + 1.0) / (resamples + 1.0), Double.NaN, Double.NaN, resamples);
+    }
+
+    /**
+     * Random generator of a single resample, independent of the thread it runs on
+     */
+    private static SplittableRandom sampleRandom(long seed, int sample)
+    {
+        return new SplittableRandom(seed * 0x9e3779b97f4a7c15L + sample);
+    }
+
+    private static void checkArguments(boolean[] correctA, boolean[] correctB, int resamples)
+    {
+        if (correctA.length != correctB.length || correctA.length == 0) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: " + correctA.length + " and " + correctB.length
+                            + " predictions");
+        }
+        if (resamples < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + resamples);
+        }
+    }
+
+    private static double accuracy(boolean[] correct)
+    {
+        int result = 0;
+        for (boolean c : correct) {
+            if (c) {
+                result++;
+            }
+        }
+        return (double) result / correct.length;
+    }
+
+    private static double percentile(double[] sorted, double p)
+    {
+        return sorted[Math.min(sorted.length - 1, (int) Math.floor(p * sorted.length))];
+    }
+
+    private static boolean[] correctness(ColumnarDataset data, byte[] predictedLabels)
+    {
+        if (predictedLabels.length != data.size()) {
+            throw new IllegalArgumentException(
+                    "Expected " + data.size() + " predictions but got " + predictedLabels.length);
+        }
+
+        boolean[] result = new boolean[predictedLabels.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = predictedLabels[i] == data.getCorrectLabelW0orW1(i);
+        }
+        return result;
+    }
+
+    /**
+     * Correctness of both prediction sets, paired by instance ID (sorted by ID)
+     */
+    private static List<boolean[]> alignCorrectness(Set<PredictedInstance> predictionsA,
+            Set<PredictedInstance> predictionsB)
+    {
+        if (predictionsA.size() != predictionsB.size()) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: " + predictionsA.size() + " and " + predictionsB.size()
+                            + " predictions");
+        }
+
+        Map<String, PredictedInstance> byIdB = new HashMap<>();
+        for (PredictedInstance instance : predictionsB) {
+            byIdB.put(instance.getId(), instance);
+        }
+
+        List<PredictedInstance> sortedA = new ArrayList<>(predictionsA);
+        sortedA.sort(null);
+
+        boolean[] correctA = new boolean[sortedA.size()];
+        boolean[] correctB = new boolean[sortedA.size()];
+        for (int i = 0; i < sortedA.size(); i++) {
+            PredictedInstance a = sortedA.get(i);
+            PredictedInstance b = byIdB.get(a.getId());
+            if (b == null) {
+                throw new IllegalArgumentException(
+                        "Invalid argument: instance " + a.getId() + " not predicted by B");
+            }
+            correctA[i] = a.getPredictedLabelW0orW1().equals(a.getCorrectLabelW0orW1());
+            correctB[i] = b.getPredictedLabelW0orW1().equals(b.getCorrectLabelW0orW1());
+        }
+
+        List<boolean[]> result = new ArrayList<>();
+        result.add(correctA);
+        result.add(correctB);
+        return result;
+    }
+
+    /**
+     * Computes resamples [from, to) by splitting the range in halves down to
+     * {@link #RESAMPLES_PER_TASK}
+     */
+    private static class ResampleTask
+            extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer sample;
+
+        ResampleTask(int from, int to, IntConsumer sample)
+        {
+            this.from = from;
+            this.to = to;
+            this.sample = sample;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= RESAMPLES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    sample.accept(i);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ResampleTask(from, middle, sample),
+                        new ResampleTask(middle, to, sample));
+            }
+        }
+    }
 }
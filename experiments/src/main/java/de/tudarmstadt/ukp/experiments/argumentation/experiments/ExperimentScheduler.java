@@ -0,0 +1,488 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs (classifier, seed) experiments in parallel. Each data file is loaded only once into a
+ * shared cache of unmodifiable sets which all jobs read from; every job gets its own
+ * classifier instance created by a {@link ClassifierFactory}.
+ *
+ * @author Ivan Habernal
+ */
+public class ExperimentScheduler
+{
+    /**
+     * Creates a new classifier for the given seed
+     */
+    public interface ClassifierFactory
+    {
+        Classifier create(long seed)
+                throws IOException;
+    }
+
+    /**
+     * Returns the configuration ({@link Classifier#getConfiguration()}) of the classifier the
+     * corresponding {@link ClassifierFactory} creates for the given seed, without creating it
+     */
+    public interface ConfigurationFactory
+    {
+        String getConfiguration(long seed);
+    }
+
+    /**
+     * Result of a single (classifier, seed) job; a failed job has NaN accuracies and the
+     * failure
+     */
+    public static class ExperimentResult
+    {
+        public final String name;
+        public final long seed;
+        public final double devAccuracy;
+        public final double testAccuracy;
+
+        /**
+         * True if the result was taken from the {@link ResultStore}
+         */
+        public final boolean cached;
+
+        /**
+         * Exception which failed the job, null if it succeeded
+         */
+        public final Exception failure;
+
+        public ExperimentResult(String name, long seed, double devAccuracy, double testAccuracy)
+        {
+            this(name, seed, devAccuracy, testAccuracy, false);
+        }
+
+        public ExperimentResult(String name, long seed, double devAccuracy, double testAccuracy,
+                boolean cached)
+        {
+            this(name, seed, devAccuracy, testAccuracy, cached, null);
+        }
+
+        /**
+         * Result of a failed job
+         *
+         * @param name    name of the classifier
+         * @param seed    seed
+         * @param failure exception which failed the job
+         */
+        public ExperimentResult(String name, long seed, Exception failure)
+        {
+            this(name, seed, Double.NaN, Double.NaN, false, failure);
+        }
+
+        private ExperimentResult(String name, long seed, double devAccuracy,
+                double testAccuracy, boolean cached, Exception failure)
+        {
+            this.name = name;
+            this.seed = seed;
+            this.devAccuracy = devAccuracy;
+            this.testAccuracy = testAccuracy;
+            this.cached = cached;
+            this.failure = failure;
+        }
+
+        public boolean isFailed()
+        {
+            return failure != null;
+        }
+    }
+
+    /**
+     * Name of the saved classifier in the artefact directory of a {@link ResultStore} entry
+     */
+    public static final String MODEL_FILE = "model.bin";
+
+    private static final Map<File, Set<SingleInstance>> DATA_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Gold labels of the cached data for evaluation, keyed by identity of the cached sets
+     */
+    private static final Map<Set<SingleInstance>, ColumnarDataset> GOLD_DATA_CACHE = Collections
+            .synchronizedMap(new IdentityHashMap<>());
+
+    private final File trainingData;
+    private final File devData;
+    private final File testData;
+
+    private final List<Callable<ExperimentResult>> jobs = new ArrayList<>();
+
+    private ResultStore resultStore;
+
+    public ExperimentScheduler(File trainingData, File devData, File testData)
+    {
+        this.trainingData = trainingData;
+        this.devData = devData;
+        this.testData = testData;
+    }
+
+    /**
+     * Enables skipping of jobs whose classifier configuration was already run on the same
+     * data; their results are taken from the store, new results are added to it
+     *
+     * @param resultStore store (null disables it)
+     */
+    public void setResultStore(ResultStore resultStore)
+    {
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * Returns the instances from the file; the file is loaded only once (per JVM) and the
+     * returned set is shared, thus unmodifiable
+     *
+     * @param file file
+     * @return unmodifiable set
+     * @throws IOException I/O exception
+     */
+    public static Set<SingleInstance> getData(File file)
+            throws IOException
+    {
+        File key = file.getAbsoluteFile();
+        Set<SingleInstance> result = DATA_CACHE.get(key);
+
+        if (result == null) {
+            synchronized (DATA_CACHE) {
+                result = DATA_CACHE.get(key);
+                if (result == null) {
+                    result = Collections.unmodifiableSet(ClassificationMain.loadData(key));
+                    DATA_CACHE.put(key, result);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds one job for each seed; with a {@link ResultStore}, the classifier is created to
+     * obtain its configuration even if the result is found in the store (see
+     * {@link #addJobs(String, ClassifierFactory, ConfigurationFactory, long...)})
+     *
+     * @param name    name of the classifier (for the report)
+     * @param factory factory
+     * @param seeds   seeds
+     */
+    public void addJobs(String name, ClassifierFactory factory, long... seeds)
+    {
+        addJobs(name, factory, new File[0], seeds);
+    }
+
+    /**
+     * Adds one job for each seed whose classifier reads further files besides the training
+     * data (such as the opposing claims for {@link AugmentedTrainingData}); their contents
+     * are part of the {@link ResultStore} key
+     *
+     * @param name       name of the classifier (for the report)
+     * @param factory    factory
+     * @param inputFiles files the created classifiers read
+     * @param seeds      seeds
+     */
+    public void addJobs(String name, ClassifierFactory factory, File[] inputFiles,
+            long... seeds)
+    {
+        for (long seed : seeds) {
+            addJob(name, seed, () -> {
+                Classifier classifier = factory.create(seed);
+                try {
+                    return runJob(name, seed, classifier.getConfiguration(), s -> classifier,
+                            inputFiles);
+                }
+                finally {
+                    // also on a hit in the result store, where runJob does not use it
+                    close(classifier);
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds one job for each seed; with a {@link ResultStore}, the classifier is created only
+     * if its result is not found in the store
+     *
+     * @param name          name of the classifier (for the report)
+     * @param factory       factory
+     * @param configuration configurations of the created classifiers
+     * @param seeds         seeds
+     */
+    public void addJobs(String name, ClassifierFactory factory,
+            ConfigurationFactory configuration, long... seeds)
+    {
+        for (long seed : seeds) {
+            addJob(name, seed,
+                    () -> runJob(name, seed, configuration.getConfiguration(seed), factory,
+                            new File[0]));
+        }
+    }
+
+    /**
+     * A failing job (such as one whose server is unreachable) yields a failed result, so
+     * the results of the other jobs are kept
+     */
+    private void addJob(String name, long seed, Callable<ExperimentResult> job)
+    {
+        jobs.add(() -> {
+            try {
+                return job.call();
+            }
+            catch (Exception e) {
+                System.err.println("Experiment " + name + " with seed " + seed + " failed");
+                e.printStackTrace();
+                return new ExperimentResult(name, seed, e);
+            }
+        });
+    }
+
+    /**
+     * Runs all added jobs on the executor and waits for them
+     *
+     * @param executorService executor
+     * @return results in the order the jobs were added, including failed jobs
+     * @throws IOException if the data cannot be loaded
+     */
+    public List<ExperimentResult> run(ExecutorService executorService)
+            throws IOException
+    {
+        // load all splits before fanning out
+        getData(trainingData);
+        getData(devData);
+        getData(testData);
+
+        List<ExperimentResult> result = new ArrayList<>();
+        try {
+            for (Future<ExperimentResult> future : executorService.invokeAll(jobs)) {
+                result.add(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Experiment failed", e.getCause());
+        }
+
+        return result;
+    }
+
+    private ExperimentResult runJob(String name, long seed, String configuration,
+            ClassifierFactory factory, File[] inputFiles)
+            throws IOException
+    {
+        if (resultStore == null) {
+            Classifier classifier = factory.create(seed);
+            try {
+                classifier.train(getData(trainingData));
+
+                return new ExperimentResult(name, seed, evaluate(classifier, devData, null),
+                        evaluate(classifier, testData, null));
+            }
+            finally {
+                close(classifier);
+            }
+        }
+
+        List<File> keyFiles = new ArrayList<>(Arrays.asList(trainingData, devData, testData));
+        keyFiles.addAll(Arrays.asList(inputFiles));
+        String key = resultStore.computeKey(configuration, keyFiles.toArray(new File[0]));
+        Properties stored = resultStore.lookup(key);
+        if (stored != null) {
+            return new ExperimentResult(name, seed,
+                    Double.parseDouble(stored.getProperty("accuracy.dev")),
+                    Double.parseDouble(stored.getProperty("accuracy.test")), true);
+        }
+
+        Classifier classifier = factory.create(seed);
+        try {
+            return runAndStore(name, seed, configuration, classifier, inputFiles, key);
+        }
+        finally {
+            close(classifier);
+        }
+    }
+
+    private ExperimentResult runAndStore(String name, long seed, String configuration,
+            Classifier classifier, File[] inputFiles, String key)
+            throws IOException
+    {
+        if (!configuration.equals(classifier.getConfiguration())) {
+            throw new IllegalStateException(
+                    "Inconsistent input: configuration " + classifier.getConfiguration()
+                            + " of the created classifier, expected " + configuration);
+        }
+        classifier.train(getData(trainingData));
+
+        // trained model is kept next to the predictions
+        if (classifier.isSaveable()) {
+            classifier.save(new File(resultStore.getArtefactDirectory(key), MODEL_FILE));
+        }
+
+        double devAccuracy;
+        try (ResultStore.PredictionWriter writer = resultStore.openPredictions(key, "dev")) {
+            devAccuracy = evaluate(classifier, devData, writer);
+        }
+        double testAccuracy;
+        try (ResultStore.PredictionWriter writer = resultStore.openPredictions(key, "test")) {
+            testAccuracy = evaluate(classifier, testData, writer);
+        }
+
+        Properties result = new Properties();
+        result.setProperty("configuration", configuration);
+        result.setProperty("data.train", trainingData.getPath());
+        result.setProperty("data.dev", devData.getPath());
+        result.setProperty("data.test", testData.getPath());
+        for (int i = 0; i < inputFiles.length; i++) {
+            result.setProperty("data.input." + i, inputFiles[i].getPath());
+        }
+        result.setProperty("accuracy.dev", Double.toString(devAccuracy));
+        result.setProperty("accuracy.test", Double.toString(testAccuracy));
+        resultStore.commit(key, result);
+
+        return new ExperimentResult(name, seed, devAccuracy, testAccuracy);
+    }
+
+    /**
+     * Releases the resources of classifiers which hold some (such as {@link LMClassifier});
+     * closing twice has no effect
+     */
+    private static void close(Classifier classifier)
+            throws IOException
+    {
+        if (classifier instanceof Closeable) {
+            ((Closeable) classifier).close();
+        }
+    }
+
+    /**
+     * Streams the predictions to an evaluator (and to the other sink, if not null), without
+     * keeping them
+     */
+    private static double evaluate(Classifier classifier, File file, PredictionSink otherSink)
+            throws IOException
+    {
+        Set<SingleInstance> data = getData(file);
+        StreamingEvaluator evaluator = new StreamingEvaluator(
+                GOLD_DATA_CACHE.computeIfAbsent(data, ColumnarDataset::fromInstances));
+        classifier.predict(data,
+                otherSink != null ? PredictionSink.tee(evaluator, otherSink) : evaluator);
+
+        if (!evaluator.isComplete()) {
+            throw new IllegalStateException(
+                    "Classifier returned " + evaluator.getNumberOfPredictions()
+                            + " predictions for " + data.size() + " instances");
+        }
+
+        return evaluator.getAccuracy();
+    }
+
+    /**
+     * Formats the results: one line per job (failed jobs with their error), followed by mean
+     * and standard deviation per classifier over its successful jobs
+     *
+     * @param results results
+     * @return report
+     */
+    public static String formatReport(List<ExperimentResult> results)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("classifier\tseed\tAccuracy_dev\tAccuracy_test\n");
+
+        Map<String, List<ExperimentResult>> byName = new LinkedHashMap<>();
+        for (ExperimentResult result : results) {
+            byName.putIfAbsent(result.name, new ArrayList<>());
+            if (result.isFailed()) {
+                sb.append(String.format(Locale.ENGLISH, "%s\t%d\tfailed: %s%n", result.name,
+                        result.seed, result.failure));
+                continue;
+            }
+
+            sb.append(String.format(Locale.ENGLISH, "%s\t%d\t%.3f\t%.3f%n", result.name,
+                    result.seed, result.devAccuracy, result.testAccuracy));
+            byName.get(result.name).add(result);
+        }
+
+        sb.append("\nclassifier\truns\tAccuracy_dev\tAccuracy_test\n");
+        for (Map.Entry<String, List<ExperimentResult>> entry : byName.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                sb.append(entry.getKey()).append("\t0\t-\t-\n");
+                continue;
+            }
+
+            double[] dev = new double[entry.getValue().size()];
+            double[] test = new double[entry.getValue().size()];
+            for (int i = 0; i < dev.length; i++) {
+                dev[i] = entry.getValue().get(i).devAccuracy;
+                test[i] = entry.getValue().get(i).testAccuracy;
+            }
+
+            sb.append(String.format(Locale.ENGLISH, "%s\t%d\t%.3f+-%.3f\t%.3f+-%.3f%n",
+                    entry.getKey(), dev.length, mean(dev), standardDeviation(dev), mean(test),
+                    standardDeviation(test)));
+        }
+
+        return sb.toString();
+    }
+
+    static double mean(double[] values)
+    {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * Sample standard deviation (0 for a single value)
+     */
+    static double standardDeviation(double[] values)
+    {
+        if (values.length < 2) {
+            return 0;
+        }
+
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+}
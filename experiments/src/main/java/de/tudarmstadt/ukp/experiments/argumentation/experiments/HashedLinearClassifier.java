@@ -0,0 +1,545 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Linear model over hashed features of each warrant: warrant unigrams and bigrams and
+ * crosses of warrant words with claim and reason words. The model scores both warrants and
+ * is trained with the logistic loss on the difference of the scores (features shared by
+ * both warrants cancel out). Weights are a single {@code float[]} updated by lock-free
+ * (Hogwild) SGD from several threads; with more than one thread, training is therefore not
+ * exactly reproducible.
+ * <p>
+ * Optionally, the training data is augmented on the fly by an {@link AugmentedTrainingData}
+ * view (see {@link #setAugmentations(Map, AugmentedTrainingData.Augmentation...)}).
+ * <p>
+ * A saved model (see {@link #save(java.io.File)}) keeps the weights in the file; the loaded
+ * classifier reads them from the mapped file without copying.
+ *
+ * @author Ivan Habernal
+ */
+public class HashedLinearClassifier
+        extends Classifier
+{
+    public static final int DEFAULT_HASH_BITS = 20;
+    public static final int DEFAULT_EPOCHS = 10;
+    public static final float DEFAULT_LEARNING_RATE = 0.1f;
+    public static final float DEFAULT_L2 = 1e-6f;
+
+    /**
+     * Experiments already run in parallel (see {@link ExperimentScheduler}), and a single
+     * thread keeps the training reproducible and the configuration machine-independent
+     */
+    public static final int DEFAULT_THREADS = 1;
+
+    /**
+     * 2^28 weights take 1 GB; a saved model must fit into a single mapping of at most 2 GB
+     * (see {@link ModelFile#open(java.io.File)})
+     */
+    public static final int MAX_HASH_BITS = 28;
+
+    // feature namespaces
+    private static final int WARRANT_UNIGRAM = 1;
+    private static final int WARRANT_BIGRAM = 2;
+    private static final int WARRANT_CLAIM = 3;
+    private static final int WARRANT_REASON = 4;
+
+    private final int hashBits;
+    private final int epochs;
+    private final float learningRate;
+    private final float l2;
+    private final int threads;
+    private final long seed;
+
+    /**
+     * Augmentations of the training data, in the order of the enum
+     */
+    private AugmentedTrainingData.Augmentation[] augmentations =
+            new AugmentedTrainingData.Augmentation[0];
+    private Map<String, String> opposingClaims;
+
+    /**
+     * Weights being trained
+     */
+    private float[] weights;
+
+    /**
+     * Weights used for predictions; wraps {@link #weights} after training or is mapped from
+     * a model file
+     */
+    private FloatBuffer model;
+
+    /**
+     * Default parameters, trained on {@link #DEFAULT_THREADS} threads
+     *
+     * @param seed seed for shuffling the training data
+     */
+    public HashedLinearClassifier(long seed)
+    {
+        this(DEFAULT_HASH_BITS, DEFAULT_EPOCHS, DEFAULT_LEARNING_RATE, DEFAULT_L2,
+                DEFAULT_THREADS, seed);
+    }
+
+    /**
+     * Configuration of {@link #HashedLinearClassifier(long)}, without creating it (see
+     * {@link ExperimentScheduler.ConfigurationFactory})
+     *
+     * @param seed seed
+     * @return configuration
+     */
+    public static String defaultConfiguration(long seed)
+    {
+        return configuration(DEFAULT_HASH_BITS, DEFAULT_EPOCHS, DEFAULT_LEARNING_RATE,
+                DEFAULT_L2, DEFAULT_THREADS, seed,
+                new AugmentedTrainingData.Augmentation[0]);
+    }
+
+    /**
+     * @param hashBits     number of weights is 2^hashBits, at most {@link #MAX_HASH_BITS}
+     * @param epochs       passes over the training data
+     * @param learningRate initial learning rate, decays with 1/sqrt(epoch)
+     * @param l2           L2 regularization, applied to the updated weights
+     * @param threads      number of training threads
+     * @param seed         seed for shuffling the training data
+     */
+    public HashedLinearClassifier(int hashBits, int epochs, float learningRate, float l2,
+            int threads, long seed)
+    {
+        if (hashBits < 1 || hashBits > MAX_HASH_BITS) {
+            throw new IllegalArgumentException("Invalid argument: " + hashBits);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + threads);
+        }
+
+        this.hashBits = hashBits;
+        this.epochs = epochs;
+        this.learningRate = learningRate;
+        this.l2 = l2;
+        this.threads = threads;
+        this.seed = seed;
+    }
+
+    /**
+     * Trains on the training data extended by the augmentations (see
+     * {@link AugmentedTrainingData#of(Collection, Map, AugmentedTrainingData.Augmentation...)})
+     *
+     * @param opposingClaims opposing claims; only needed for
+     *                       {@link AugmentedTrainingData.Augmentation#OPPOSING_CLAIM}
+     * @param augmentations  augmentations, none to train on the data as given
+     * @return this
+     */
+    public HashedLinearClassifier setAugmentations(Map<String, String> opposingClaims,
+            AugmentedTrainingData.Augmentation... augmentations)
+    {
+        Set<AugmentedTrainingData.Augmentation> unique = EnumSet
+                .noneOf(AugmentedTrainingData.Augmentation.class);
+        Collections.addAll(unique, augmentations);
+        if (unique.size() != augmentations.length) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: duplicate augmentations " + unique);
+        }
+        if (unique.contains(AugmentedTrainingData.Augmentation.OPPOSING_CLAIM)
+                && opposingClaims == null) {
+            throw new IllegalArgumentException("Parameter opposingClaims is null");
+        }
+
+        this.augmentations = unique.toArray(new AugmentedTrainingData.Augmentation[0]);
+        this.opposingClaims = opposingClaims;
+        return this;
+    }
+
+    /**
+     * Includes the number of threads: only single-threaded training is reproducible, so
+     * results of different thread counts are kept apart
+     */
+    @Override
+    public String getConfiguration()
+    {
+        return configuration(hashBits, epochs, learningRate, l2, threads, seed,
+                augmentations);
+    }
+
+    /**
+     * Augmentations are listed only if there are any
+     */
+    private static String configuration(int hashBits, int epochs, float learningRate,
+            float l2, int threads, long seed, AugmentedTrainingData.Augmentation[] augmentations)
+    {
+        return HashedLinearClassifier.class.getName() + "(hashBits=" + hashBits + ", epochs="
+                + epochs + ", learningRate=" + learningRate + ", l2=" + l2 + ", threads="
+                + threads + ", seed=" + seed + (augmentations.length > 0 ?
+                ", augmentations=" + Arrays.toString(augmentations) :
+                "") + ")";
+    }
+
+    /**
+     * Trains on the training data with the augmentations, if any
+     */
+    @Override
+    void train(Set<SingleInstance> trainingData)
+    {
+        if (augmentations.length == 0) {
+            train((Collection<SingleInstance>) trainingData);
+        }
+        else {
+            train(AugmentedTrainingData.of(trainingData, opposingClaims, augmentations));
+        }
+    }
+
+    /**
+     * Trains the model on the data as given; unlike {@link #train(Set)}, the training data
+     * may contain the same instance several times (such as an {@link AugmentedTrainingData}
+     * view)
+     *
+     * @param trainingData training data
+     */
+    public void train(Collection<SingleInstance> trainingData)
+    {
+        weights = new float[1 << hashBits];
+
+        // features are extracted only once
+        int size = trainingData.size();
+        int[][] features0 = new int[size][];
+        int[][] features1 = new int[size][];
+        boolean[] w0Correct = new boolean[size];
+        int n = 0;
+        for (SingleInstance instance : trainingData) {
+            features0[n] = extractFeatures(instance.getWarrant0(), instance.getClaim(),
+                    instance.getReason());
+            features1[n] = extractFeatures(instance.getWarrant1(), instance.getClaim(),
+                    instance.getReason());
+            w0Correct[n] = instance.getCorrectLabelW0orW1() == 0;
+            n++;
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        Random random = new Random(seed);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "hogwild");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                shuffle(order, random);
+                float rate = (float) (learningRate / Math.sqrt(epoch + 1));
+
+                // each thread takes a contiguous slice of the shuffled order
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int from = (int) ((long) size * t / threads);
+                    int to = (int) ((long) size * (t + 1) / threads);
+                    futures.add(executorService.submit(() -> {
+                        for (int i = from; i < to; i++) {
+                            int index = order[i];
+                            update(features0[index], features1[index], w0Correct[index], rate);
+                        }
+                    }));
+                }
+
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            executorService.shutdown();
+        }
+
+        model = FloatBuffer.wrap(weights);
+    }
+
+    /**
+     * Single SGD step of the logistic loss on score(w0) - score(w1); unsynchronized
+     */
+    private void update(int[] features0, int[] features1, boolean w0Correct, float rate)
+    {
+        float margin = score(features0) - score(features1);
+        float probabilityW0 = (float) (1.0 / (1.0 + Math.exp(-margin)));
+        float gradient = probabilityW0 - (w0Correct ? 1f : 0f);
+
+        float decay = 1f - rate * l2;
+        for (int feature : features0) {
+            weights[feature] = weights[feature] * decay - rate * gradient;
+        }
+        for (int feature : features1) {
+            weights[feature] = weights[feature] * decay + rate * gradient;
+        }
+    }
+
+    private float score(int[] features)
+    {
+        float result = 0;
+        for (int feature : features) {
+            result += weights[feature];
+        }
+        return result;
+    }
+
+    /**
+     * Difference of the warrant scores, positive if warrant0 is the better one
+     */
+    private float margin(String warrant0, String warrant1, String claim, String reason)
+    {
+        if (model == null) {
+            throw new IllegalStateException("Classifier not trained");
+        }
+
+        return modelScore(extractFeatures(warrant0, claim, reason)) - modelScore(
+                extractFeatures(warrant1, claim, reason));
+    }
+
+    private float modelScore(int[] features)
+    {
+        float result = 0;
+        for (int feature : features) {
+            result += model.get(feature);
+        }
+        return result;
+    }
+
+    @Override
+    protected Set<PredictedInstance> makePredictions(Set<SingleInstance> testData)
+    {
+        Set<PredictedInstance> result = new HashSet<>();
+        for (SingleInstance instance : testData) {
+            float margin = margin(instance.getWarrant0(), instance.getWarrant1(),
+                    instance.getClaim(), instance.getReason());
+
+            PredictedInstance predictedInstance = new PredictedInstance(instance);
+            predictedInstance.setPredictedLabelW0orW1(margin > 0 ? 0 : 1);
+            result.add(predictedInstance);
+        }
+
+        return result;
+    }
+
+    @Override
+    protected void makePredictions(ColumnarDataset testData, byte[] predictions)
+    {
+        for (int i = 0; i < predictions.length; i++) {
+            float margin = margin(testData.getWarrant0(i), testData.getWarrant1(i),
+                    testData.getClaim(i), testData.getReason(i));
+            predictions[i] = (byte) (margin > 0 ? 0 : 1);
+        }
+    }
+
+    /**
+     * Pushes predictions with the absolute margin as the score
+     */
+    @Override
+    protected void makePredictions(Set<SingleInstance> testData, PredictionSink sink)
+    {
+        for (SingleInstance instance : testData) {
+            float margin = margin(instance.getWarrant0(), instance.getWarrant1(),
+                    instance.getClaim(), instance.getReason());
+            sink.accept(instance.getId(), margin > 0 ? 0 : 1, Math.abs(margin));
+        }
+    }
+
+    @Override
+    protected void makePredictions(ColumnarDataset testData, PredictionSink sink)
+    {
+        for (int i = 0; i < testData.size(); i++) {
+            float margin = margin(testData.getWarrant0(i), testData.getWarrant1(i),
+                    testData.getClaim(i), testData.getReason(i));
+            sink.accept(testData.getId(i), margin > 0 ? 0 : 1, Math.abs(margin));
+        }
+    }
+
+    @Override
+    public boolean isSaveable()
+    {
+        return true;
+    }
+
+    /**
+     * Payload: hash bits, epochs, learning rate, L2, seed, threads, augmentations (bits of
+     * their ordinals) and the weights
+     */
+    @Override
+    protected void writeModel(ModelFile.Writer writer)
+            throws IOException
+    {
+        if (model == null) {
+            throw new IllegalStateException("Classifier not trained");
+        }
+
+        writer.putInt(hashBits);
+        writer.putInt(epochs);
+        writer.putFloat(learningRate);
+        writer.putFloat(l2);
+        writer.putLong(seed);
+        writer.putInt(threads);
+        int augmentationBits = 0;
+        for (AugmentedTrainingData.Augmentation augmentation : augmentations) {
+            augmentationBits |= 1 << augmentation.ordinal();
+        }
+        writer.putInt(augmentationBits);
+
+        float[] values = weights;
+        if (values == null) {
+            // loaded from a file
+            values = new float[model.capacity()];
+            FloatBuffer source = model.duplicate();
+            source.rewind();
+            source.get(values);
+        }
+        writer.putFloats(values);
+    }
+
+    static HashedLinearClassifier readModel(ModelFile modelFile)
+            throws IOException
+    {
+        ByteBuffer payload = modelFile.getPayload();
+        HashedLinearClassifier result = new HashedLinearClassifier(payload.getInt(0),
+                payload.getInt(4), payload.getFloat(8), payload.getFloat(12),
+                payload.getInt(24), payload.getLong(16));
+
+        // the opposing claims are needed only for training
+        List<AugmentedTrainingData.Augmentation> augmentations = new ArrayList<>();
+        for (AugmentedTrainingData.Augmentation augmentation : AugmentedTrainingData
+                .Augmentation.values()) {
+            if ((payload.getInt(28) & (1 << augmentation.ordinal())) != 0) {
+                augmentations.add(augmentation);
+            }
+        }
+        result.augmentations = augmentations.toArray(new AugmentedTrainingData.Augmentation[0]);
+
+        int numberOfWeights = 1 << result.hashBits;
+        if (payload.capacity() - 32 != (long) numberOfWeights * 4) {
+            throw new IOException("Inconsistent input: expected " + numberOfWeights
+                    + " weights but the payload has " + payload.capacity() + " bytes");
+        }
+
+        payload.position(32);
+        result.model = payload.slice().order(payload.order()).asFloatBuffer();
+        return result;
+    }
+
+    /**
+     * Hashed feature indices of a warrant in the context of the claim and the reason
+     */
+    int[] extractFeatures(String warrant, String claim, String reason)
+    {
+        int[] warrantWords = wordHashes(warrant);
+        int[] claimWords = wordHashes(claim);
+        int[] reasonWords = wordHashes(reason);
+
+        int[] result = new int[warrantWords.length * (2 + claimWords.length
+                + reasonWords.length)];
+        int mask = (1 << hashBits) - 1;
+        int n = 0;
+
+        for (int i = 0; i < warrantWords.length; i++) {
+            result[n++] = featureHash(WARRANT_UNIGRAM, warrantWords[i], 0) & mask;
+            // bigram with the previous word, or with the sentence start
+            result[n++] = featureHash(WARRANT_BIGRAM, i > 0 ? warrantWords[i - 1] : 0,
+                    warrantWords[i]) & mask;
+            for (int claimWord : claimWords) {
+                result[n++] = featureHash(WARRANT_CLAIM, warrantWords[i], claimWord) & mask;
+            }
+            for (int reasonWord : reasonWords) {
+                result[n++] = featureHash(WARRANT_REASON, warrantWords[i], reasonWord) & mask;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Hashes of lower-cased words (maximal sequences of letters and digits)
+     */
+    static int[] wordHashes(String text)
+    {
+        int[] result = new int[text.length() / 2 + 1];
+        int n = 0;
+
+        int hash = 0;
+        boolean inWord = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                hash = hash * 31 + Character.toLowerCase(c);
+                inWord = true;
+            }
+            else if (inWord) {
+                result[n++] = hash;
+                hash = 0;
+                inWord = false;
+            }
+        }
+
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    private static int featureHash(int namespace, int first, int second)
+    {
+        long hash = namespace * 0x9e3779b97f4a7c15L + first;
+        hash = hash * 0xff51afd7ed558ccdL + second;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private static void shuffle(int[] array, Random random)
+    {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+}
@@ -18,26 +18,83 @@
 
 package de.tudarmstadt.ukp.experiments.argumentation.experiments;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This implementation requires a running REST service (a server) with the pre-trained language
  * model. The server is not part of the source code, neither is the pre-trained model (due to its
  * size, roughly 1.8 GB). Contact us if you want the experiment with the language model baseline.
+ * Alternatively, an in-process {@link LanguageModel} (such as {@link NGramLanguageModel}) can be
+ * used and no server is needed.
+ * <p>
+ * Predictions are scored in batches: all warrants are sent to the server over a pool of
+ * keep-alive connections with a bounded number of requests in flight; failed requests
+ * (I/O errors, 5xx) are retried with exponential backoff. Optionally, the log-likelihoods are
+ * stored in a persistent {@link LogProbabilityCache}, so repeated runs do not query the server.
+ * The client must be closed to release its threads and connections.
  * <p>
  * (c) 2017 Ivan Habernal
  */
 public class LMClassifier
         extends Classifier
+        implements Closeable
 {
+    public static final String DEFAULT_MODEL_NAME = "default";
+    public static final int DEFAULT_MAX_REQUESTS_IN_FLIGHT = 8;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    private final CloseableHttpClient httpClient;
     private final RestTemplate restTemplate;
     private final String uri;
+    private final ExecutorService executorService;
+    private final int maxRetries;
+    private final LogProbabilityCache cache;
+    private final String modelIdentity;
+    private final LanguageModel languageModel;
+
+    /**
+     * Uses an in-process language model instead of the REST service
+     *
+     * @param languageModel language model
+     */
+    public LMClassifier(LanguageModel languageModel)
+    {
+        if (languageModel == null) {
+            throw new IllegalArgumentException("Parameter languageModel is null");
+        }
+
+        this.languageModel = languageModel;
+        this.httpClient = null;
+        this.restTemplate = null;
+        this.uri = null;
+        this.executorService = null;
+        this.maxRetries = 0;
+        this.cache = null;
+        this.modelIdentity = null;
+    }
 
     /**
      * Creates a new REST service client and connects to the language model
@@ -47,16 +104,119 @@ public class LMClassifier
      */
     public LMClassifier(String server, int port)
     {
+        this(server, port, DEFAULT_MODEL_NAME, DEFAULT_MAX_REQUESTS_IN_FLIGHT,
+                DEFAULT_MAX_RETRIES, null);
+    }
+
+    /**
+     * Creates a new REST service client with a pool of {@code maxRequestsInFlight} keep-alive
+     * connections and connects to the language model
+     *
+     * @param server              server
+     * @param port                port
+     * @param modelName           name and version of the model the server runs; must change
+     *                            whenever the model does, as it identifies the model in the
+     *                            cache and in the configuration
+     * @param maxRequestsInFlight maximal number of concurrent requests to the server
+     * @param maxRetries          how many times a failed request is repeated
+     * @param cache               cache of log-likelihoods (may be null); the model is
+     *                            identified by its name, the server and the port
+     */
+    public LMClassifier(String server, int port, String modelName, int maxRequestsInFlight,
+            int maxRetries, LogProbabilityCache cache)
+    {
+        if (modelName == null || modelName.isEmpty()) {
+            throw new IllegalArgumentException("Parameter modelName is null or empty");
+        }
+        if (maxRequestsInFlight < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + maxRequestsInFlight);
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Invalid argument: " + maxRetries);
+        }
+
         uri = "http://" + server + ":" + port + "/logprob/{sentence}";
+        this.maxRetries = maxRetries;
+        this.cache = cache;
+        this.modelIdentity = modelName + "@" + server + ":" + port;
+        this.languageModel = null;
 
-        Map<String, String> params = new HashMap<>();
-        params.put("sentence", "This is a test");
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxRequestsInFlight);
+        connectionManager.setDefaultMaxPerRoute(maxRequestsInFlight);
+        httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+
+        // daemon threads, so the client does not block the JVM from exiting
+        executorService = Executors.newFixedThreadPool(maxRequestsInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "lm-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+
+        // probe with retries, so a transient failure does not fail the whole experiment
+        try {
+            getLogLikelihoodWithRetry("This is a test");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            IOUtils.closeQuietly(this);
+            throw new IllegalStateException(e);
+        }
+        catch (RuntimeException e) {
+            IOUtils.closeQuietly(this);
+            throw e;
+        }
+    }
 
-        restTemplate = new RestTemplate();
-        restTemplate.getForObject(uri, Double.class, params);
+    /**
+     * Stops the client threads and closes the connections; does nothing for the in-process
+     * model or if already closed
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        if (httpClient != null) {
+            httpClient.close();
+        }
     }
 
     public double getLogLikelihood(String sentence)
+    {
+        if (languageModel != null) {
+            return languageModel.getLogLikelihood(sentence);
+        }
+
+        if (cache != null) {
+            double cached = cache.get(modelIdentity, sentence);
+            if (!Double.isNaN(cached)) {
+                return cached;
+            }
+        }
+
+        double result = requestLogLikelihood(sentence);
+        putIntoCache(sentence, result);
+
+        return result;
+    }
+
+    /**
+     * Client errors ({@link Double#NEGATIVE_INFINITY}) are not cached, so the sentence is
+     * requested again in the next run
+     */
+    private void putIntoCache(String sentence, double logLikelihood)
+    {
+        if (cache != null && logLikelihood != Double.NEGATIVE_INFINITY) {
+            cache.put(modelIdentity, sentence, logLikelihood);
+        }
+    }
+
+    private double requestLogLikelihood(String sentence)
     {
         Map<String, String> params = new HashMap<>();
         params.put("sentence", sentence);
@@ -69,19 +229,103 @@ public class LMClassifier
         }
     }
 
+    /**
+     * Scores all sentences concurrently; the result has the same order as the input
+     *
+     * @param sentences sentences
+     * @return log likelihoods
+     */
+    public double[] getLogLikelihoods(List<String> sentences)
+    {
+        double[] result = new double[sentences.size()];
+
+        if (languageModel != null) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = languageModel.getLogLikelihood(sentences.get(i));
+            }
+            return result;
+        }
+
+        // null for sentences found in the cache
+        List<Future<Double>> futures = new ArrayList<>(sentences.size());
+        for (int i = 0; i < result.length; i++) {
+            String sentence = sentences.get(i);
+            result[i] = cache != null ? cache.get(modelIdentity, sentence) : Double.NaN;
+
+            futures.add(Double.isNaN(result[i]) ?
+                    executorService.submit(() -> getLogLikelihoodWithRetry(sentence)) :
+                    null);
+        }
+
+        try {
+            for (int i = 0; i < result.length; i++) {
+                if (futures.get(i) != null) {
+                    result[i] = futures.get(i).get();
+                    putIntoCache(sentences.get(i), result[i]);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            for (Future<Double> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private double getLogLikelihoodWithRetry(String sentence)
+            throws InterruptedException
+    {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return requestLogLikelihood(sentence);
+            }
+            catch (ResourceAccessException | HttpServerErrorException exception) {
+                if (attempt >= maxRetries) {
+                    throw exception;
+                }
+
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
     @Override
     protected Set<PredictedInstance> makePredictions(Set<SingleInstance> testData)
     {
+        List<SingleInstance> instances = new ArrayList<>(testData);
+
+        // warrant0 and warrant1 of each instance next to each other
+        List<String> warrants = new ArrayList<>(instances.size() * 2);
+        for (SingleInstance instance : instances) {
+            warrants.add(instance.getWarrant0());
+            warrants.add(instance.getWarrant1());
+        }
+
+        double[] likelihoods = getLogLikelihoods(warrants);
+
         Set<PredictedInstance> result = new HashSet<>();
 
-        for (SingleInstance instance : testData) {
-            double w0Likelihood = getLogLikelihood(instance.getWarrant0());
-            double w1Likelihood = getLogLikelihood(instance.getWarrant1());
+        for (int i = 0; i < instances.size(); i++) {
+            double w0Likelihood = likelihoods[2 * i];
+            double w1Likelihood = likelihoods[2 * i + 1];
 
             // lower probability is the correct one
             int w0orW1 = w0Likelihood < w1Likelihood ? 0 : 1;
 
-            PredictedInstance predictedInstance = new PredictedInstance(instance);
+            PredictedInstance predictedInstance = new PredictedInstance(instances.get(i));
             predictedInstance.setPredictedLabelW0orW1(w0orW1);
             result.add(predictedInstance);
         }
@@ -89,6 +333,82 @@ public class LMClassifier
         return result;
     }
 
+    @Override
+    protected void makePredictions(ColumnarDataset testData, byte[] predictions)
+    {
+        List<String> warrants = new ArrayList<>(testData.size() * 2);
+        for (int i = 0; i < testData.size(); i++) {
+            warrants.add(testData.getWarrant0(i));
+            warrants.add(testData.getWarrant1(i));
+        }
+
+        double[] likelihoods = getLogLikelihoods(warrants);
+
+        for (int i = 0; i < predictions.length; i++) {
+            // lower probability is the correct one
+            predictions[i] = (byte) (likelihoods[2 * i] < likelihoods[2 * i + 1] ? 0 : 1);
+        }
+    }
+
+    /**
+     * Pushes predictions with the absolute difference of the warrants' log-likelihoods as
+     * the score
+     */
+    @Override
+    protected void makePredictions(Set<SingleInstance> testData, PredictionSink sink)
+    {
+        List<SingleInstance> instances = new ArrayList<>(testData);
+
+        List<String> warrants = new ArrayList<>(instances.size() * 2);
+        for (SingleInstance instance : instances) {
+            warrants.add(instance.getWarrant0());
+            warrants.add(instance.getWarrant1());
+        }
+
+        double[] likelihoods = getLogLikelihoods(warrants);
+
+        for (int i = 0; i < instances.size(); i++) {
+            pushPrediction(instances.get(i).getId(), likelihoods[2 * i],
+                    likelihoods[2 * i + 1], sink);
+        }
+    }
+
+    @Override
+    protected void makePredictions(ColumnarDataset testData, PredictionSink sink)
+    {
+        List<String> warrants = new ArrayList<>(testData.size() * 2);
+        for (int i = 0; i < testData.size(); i++) {
+            warrants.add(testData.getWarrant0(i));
+            warrants.add(testData.getWarrant1(i));
+        }
+
+        double[] likelihoods = getLogLikelihoods(warrants);
+
+        for (int i = 0; i < testData.size(); i++) {
+            pushPrediction(testData.getId(i), likelihoods[2 * i], likelihoods[2 * i + 1], sink);
+        }
+    }
+
+    private static void pushPrediction(String id, double w0Likelihood, double w1Likelihood,
+            PredictionSink sink)
+    {
+        // lower probability is the correct one
+        int w0orW1 = w0Likelihood < w1Likelihood ? 0 : 1;
+        sink.accept(id, w0orW1, Math.abs(w0Likelihood - w1Likelihood));
+    }
+
+    /**
+     * The in-process model is described by its {@code toString()}, the REST service by the
+     * model name, server and port
+     */
+    @Override
+    public String getConfiguration()
+    {
+        return getClass().getName() + "(" + (languageModel != null ?
+                languageModel.toString() :
+                modelIdentity) + ")";
+    }
+
     @Override
     void train(Set<SingleInstance> trainingData)
     {
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+/**
+ * Language model scoring entire sentences
+ *
+ * @author Ivan Habernal
+ */
+public interface LanguageModel
+{
+    /**
+     * Returns the log-likelihood of the sentence
+     *
+     * @param sentence sentence
+     * @return log-likelihood or {@code Double.NEGATIVE_INFINITY} if the sentence cannot be scored
+     */
+    double getLogLikelihood(String sentence);
+}
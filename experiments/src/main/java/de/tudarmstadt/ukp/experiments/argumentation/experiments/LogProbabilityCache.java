@@ -0,0 +1,307 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent cache of sentence log-probabilities, backed by a memory-mapped file of a fixed
+ * size. Entries are keyed by a 64-bit hash of the model identity and the sentence and
+ * verified by a second, independent 32-bit hash and the sentence length; the file is
+ * organized as buckets of {@link #SLOTS_PER_BUCKET} slots and a full bucket evicts one of its
+ * entries, so the file never grows over the capacity given at creation.
+ * <p>
+ * Slot layout: 8 bytes key (0 = empty slot), 4 bytes check hash, 4 bytes sentence length,
+ * 8 bytes value (double).
+ *
+ * @author Ivan Habernal
+ */
+public class LogProbabilityCache
+        implements Closeable
+{
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * The file is mapped at once, which limits it to 2 GB
+     */
+    public static final int MAX_CAPACITY = 1 << 26;
+
+    private static final long MAGIC = 0x4152435443414348L;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+    private static final int SLOTS_PER_BUCKET = 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int bucketMask;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int size;
+    private int evictionCounter;
+
+    /**
+     * Opens the cache file or creates a new one with the default capacity
+     *
+     * @param cacheFile file
+     * @throws IOException if the existing file is not a cache file
+     */
+    public LogProbabilityCache(File cacheFile)
+            throws IOException
+    {
+        this(cacheFile, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Opens the cache file or creates a new one
+     *
+     * @param cacheFile file
+     * @param capacity  maximal number of entries for a new file (rounded up to a power of two),
+     *                  at most {@link #MAX_CAPACITY}; an existing file keeps its capacity
+     * @throws IOException if the existing file is not a cache file
+     */
+    public LogProbabilityCache(File cacheFile, int capacity)
+            throws IOException
+    {
+        if (capacity < SLOTS_PER_BUCKET || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid argument: " + capacity);
+        }
+
+        boolean exists = cacheFile.exists() && cacheFile.length() > 0;
+        file = new RandomAccessFile(cacheFile, "rw");
+
+        if (exists) {
+            if (file.length() < HEADER_SIZE || file.readLong() != MAGIC
+                    || file.readInt() != VERSION) {
+                file.close();
+                throw new IOException("Not a log-probability cache file: " + cacheFile);
+            }
+            capacity = file.readInt();
+            if (capacity < SLOTS_PER_BUCKET || capacity > MAX_CAPACITY) {
+                file.close();
+                throw new IOException("Corrupted log-probability cache file: " + cacheFile);
+            }
+        }
+        else {
+            capacity = Integer.highestOneBit(capacity - 1) << 1;
+        }
+
+        long length = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        if (exists && file.length() != length) {
+            file.close();
+            throw new IOException("Corrupted log-probability cache file: " + cacheFile);
+        }
+
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        bucketMask = capacity / SLOTS_PER_BUCKET - 1;
+
+        if (exists) {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (buffer.getLong(slotOffset(slot)) != 0) {
+                    size++;
+                }
+            }
+        }
+        else {
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(8, VERSION);
+            buffer.putInt(12, capacity);
+        }
+    }
+
+    /**
+     * Returns the cached log-probability
+     *
+     * @param modelIdentity model
+     * @param sentence      sentence
+     * @return value or {@code NaN} if not cached
+     */
+    public synchronized double get(String modelIdentity, String sentence)
+    {
+        long key = key(modelIdentity, sentence);
+        int check = check(modelIdentity, sentence);
+        int firstSlot = firstSlotOfBucket(key);
+
+        for (int slot = firstSlot; slot < firstSlot + SLOTS_PER_BUCKET; slot++) {
+            if (matches(slot, key, check, sentence.length())) {
+                hits++;
+                return buffer.getDouble(slotOffset(slot) + 16);
+            }
+        }
+
+        misses++;
+        return Double.NaN;
+    }
+
+    public synchronized void put(String modelIdentity, String sentence, double logProbability)
+    {
+        long key = key(modelIdentity, sentence);
+        int check = check(modelIdentity, sentence);
+        int firstSlot = firstSlotOfBucket(key);
+
+        int targetSlot = -1;
+        for (int slot = firstSlot; slot < firstSlot + SLOTS_PER_BUCKET; slot++) {
+            if (matches(slot, key, check, sentence.length())) {
+                targetSlot = slot;
+                break;
+            }
+            if (buffer.getLong(slotOffset(slot)) == 0 && targetSlot < 0) {
+                targetSlot = slot;
+            }
+        }
+
+        if (targetSlot < 0) {
+            // bucket is full, replace one of the entries round-robin
+            targetSlot = firstSlot + (evictionCounter++ & (SLOTS_PER_BUCKET - 1));
+            evictions++;
+        }
+        else if (buffer.getLong(slotOffset(targetSlot)) == 0) {
+            size++;
+        }
+
+        int offset = slotOffset(targetSlot);
+        buffer.putLong(offset, key);
+        buffer.putInt(offset + 8, check);
+        buffer.putInt(offset + 12, sentence.length());
+        buffer.putDouble(offset + 16, logProbability);
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * @return number of cached entries
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public int getCapacity()
+    {
+        return (bucketMask + 1) * SLOTS_PER_BUCKET;
+    }
+
+    /**
+     * Writes all changes to the disk
+     */
+    public synchronized void flush()
+    {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close()
+            throws IOException
+    {
+        buffer.force();
+        file.close();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LogProbabilityCache{size=" + size() + ", hits=" + getHits() + ", misses="
+                + getMisses() + ", evictions=" + getEvictions() + '}';
+    }
+
+    private int firstSlotOfBucket(long key)
+    {
+        return (int) (key & bucketMask) * SLOTS_PER_BUCKET;
+    }
+
+    /**
+     * True if the slot holds the entry; a different entry with the same key is treated as
+     * absent
+     */
+    private boolean matches(int slot, long key, int check, int sentenceLength)
+    {
+        int offset = slotOffset(slot);
+        return buffer.getLong(offset) == key && buffer.getInt(offset + 8) == check
+                && buffer.getInt(offset + 12) == sentenceLength;
+    }
+
+    /**
+     * Fits into an int for all capacities up to {@link #MAX_CAPACITY}
+     */
+    private static int slotOffset(int slot)
+    {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * 64-bit FNV-1a over the model identity and the sentence, followed by a final mix;
+     * never returns 0 which denotes an empty slot
+     */
+    static long key(String modelIdentity, String sentence)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < modelIdentity.length(); i++) {
+            hash = (hash ^ modelIdentity.charAt(i)) * 0x100000001b3L;
+        }
+        // separator so that ("ab", "c") and ("a", "bc") differ
+        hash = (hash ^ 0xffff) * 0x100000001b3L;
+        for (int i = 0; i < sentence.length(); i++) {
+            hash = (hash ^ sentence.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * 32-bit polynomial hash over the model identity and the sentence, independent of
+     * {@link #key(String, String)}
+     */
+    static int check(String modelIdentity, String sentence)
+    {
+        int hash = 17;
+        for (int i = 0; i < modelIdentity.length(); i++) {
+            hash = hash * 31 + modelIdentity.charAt(i);
+        }
+        hash = hash * 31 + 0xffff;
+        for (int i = 0; i < sentence.length(); i++) {
+            hash = hash * 31 + sentence.charAt(i);
+        }
+
+        return hash;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Versioned binary file with a trained {@link Classifier}, see {@link Classifier#save(File)}
+ * and {@link Classifier#load(File)}. Opening the file maps it read-only into memory, so large
+ * weight arrays are not deserialized but used directly from the page cache (shared by all
+ * processes which load the same model).
+ * <p>
+ * File layout (little-endian): magic, version, lengths of the class name and of the
+ * configuration (see {@link Classifier#getConfiguration()}), both strings in UTF-8, and the
+ * classifier-specific payload starting at an offset aligned to 8 bytes.
+ *
+ * @author Ivan Habernal
+ */
+public class ModelFile
+{
+    private static final long MAGIC = 0x415243544d4f444cL;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final String className;
+    private final String configuration;
+    private final ByteBuffer payload;
+
+    private ModelFile(String className, String configuration, ByteBuffer payload)
+    {
+        this.className = className;
+        this.configuration = configuration;
+        this.payload = payload;
+    }
+
+    /**
+     * Maps the file; the mapping stays valid after the file is closed. The file is mapped at
+     * once, so it must not be larger than 2 GB.
+     *
+     * @param file model file
+     * @return model file with the payload mapped
+     * @throws IOException if the file is not a model file, has a different version or is too
+     *                     large
+     */
+    public static ModelFile open(File file)
+            throws IOException
+    {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a model file: " + file);
+            }
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Model file larger than 2 GB: " + file);
+            }
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getLong(0) != MAGIC) {
+                throw new IOException("Not a model file: " + file);
+            }
+            if (buffer.getInt(8) != VERSION) {
+                throw new IOException(
+                        "Unsupported model version " + buffer.getInt(8) + " in " + file);
+            }
+
+            int classNameLength = buffer.getInt(12);
+            int configurationLength = buffer.getInt(16);
+            long payloadOffset = align(HEADER_SIZE + (long) classNameLength
+                    + configurationLength);
+            if (classNameLength < 0 || configurationLength < 0
+                    || payloadOffset > channel.size()) {
+                throw new IOException("Inconsistent input: corrupted model file " + file);
+            }
+
+            buffer.position(HEADER_SIZE);
+            String className = readString(buffer, classNameLength);
+            String configuration = readString(buffer, configurationLength);
+
+            buffer.position((int) payloadOffset);
+            ByteBuffer payload = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+            return new ModelFile(className, configuration, payload);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length)
+    {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long offset)
+    {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * @return name of the class of the saved classifier
+     */
+    public String getClassName()
+    {
+        return className;
+    }
+
+    /**
+     * @return configuration of the saved classifier
+     */
+    public String getConfiguration()
+    {
+        return configuration;
+    }
+
+    /**
+     * @return read-only payload (little-endian), positioned at its start
+     */
+    public ByteBuffer getPayload()
+    {
+        return payload.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes the file by a temporary file and renaming, so an interrupted write leaves no
+     * valid file
+     *
+     * @param file       output
+     * @param classifier classifier
+     * @throws IOException I/O exception
+     */
+    static void write(File file, Classifier classifier)
+            throws IOException
+    {
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        try (RandomAccessFile out = new RandomAccessFile(tmpFile, "rw")) {
+            out.setLength(0);
+            Writer writer = new Writer(out.getChannel());
+
+            byte[] className = classifier.getClass().getName().getBytes(StandardCharsets.UTF_8);
+            byte[] configuration = classifier.getConfiguration()
+                    .getBytes(StandardCharsets.UTF_8);
+            writer.putLong(MAGIC);
+            writer.putInt(VERSION);
+            writer.putInt(className.length);
+            writer.putInt(configuration.length);
+            writer.putInt(0);
+            writer.putBytes(className);
+            writer.putBytes(configuration);
+            writer.align();
+
+            classifier.writeModel(writer);
+            writer.flush();
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot overwrite " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmpFile + " to " + file);
+        }
+    }
+
+    /**
+     * Buffered little-endian output of the payload
+     */
+    public static class Writer
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        private Writer(FileChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        public void putInt(int value)
+                throws IOException
+        {
+            ensureRemaining(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        public void putLong(long value)
+                throws IOException
+        {
+            ensureRemaining(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        public void putFloat(float value)
+                throws IOException
+        {
+            ensureRemaining(4);
+            buffer.putFloat(value);
+            position += 4;
+        }
+
+        /**
+         * Writes the values aligned to 8 bytes (pads before them if needed), so they can be
+         * read as a {@link FloatBuffer} directly from the mapped file
+         *
+         * @param values values
+         * @throws IOException I/O exception
+         */
+        public void putFloats(float[] values)
+                throws IOException
+        {
+            align();
+            int written = 0;
+            while (written < values.length) {
+                ensureRemaining(4);
+                int count = Math.min(values.length - written, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, written, count);
+                buffer.position(buffer.position() + count * 4);
+                written += count;
+            }
+            position += (long) values.length * 4;
+        }
+
+        void putBytes(byte[] bytes)
+                throws IOException
+        {
+            int written = 0;
+            while (written < bytes.length) {
+                ensureRemaining(1);
+                int count = Math.min(bytes.length - written, buffer.remaining());
+                buffer.put(bytes, written, count);
+                written += count;
+            }
+            position += bytes.length;
+        }
+
+        /**
+         * Pads with zeros to a multiple of 8 bytes
+         */
+        void align()
+                throws IOException
+        {
+            while (position % 8 != 0) {
+                ensureRemaining(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        private void ensureRemaining(int bytes)
+                throws IOException
+        {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush()
+                throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
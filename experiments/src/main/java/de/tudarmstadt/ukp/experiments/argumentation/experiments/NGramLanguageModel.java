@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process back-off n-gram language model loaded from an ARPA file (as written by SRILM or
+ * KenLM's {@code lmplz}). N-grams are stored only as 64-bit hashes in open-addressing tables
+ * (one per order), probabilities and back-off weights are quantized to 16 bits per order.
+ * Sentences are tokenized on whitespace and wrapped in {@code <s>} and {@code </s>};
+ * words missing in the vocabulary are scored as {@code <unk>}.
+ * <p>
+ * Log-likelihoods are in log10, as in the ARPA file.
+ *
+ * @author Ivan Habernal
+ */
+public class NGramLanguageModel
+        implements LanguageModel
+{
+    /**
+     * Log10 probability of unknown words if the model has no {@code <unk>} entry
+     */
+    private static final float UNKNOWN_WORD_LOG10_PROB = -100f;
+
+    private final ProbingTable[] tables;
+    private final long beginOfSentence;
+    private final long endOfSentence;
+    private final long unknownWord;
+    private final String description;
+
+    private NGramLanguageModel(ProbingTable[] tables, String description)
+    {
+        this.tables = tables;
+        this.description = description;
+        this.beginOfSentence = wordHash("<s>", 0, 3);
+        this.endOfSentence = wordHash("</s>", 0, 4);
+        this.unknownWord = wordHash("<unk>", 0, 5);
+    }
+
+    /**
+     * Loads an ARPA file (may be gzipped if the name ends with {@code .gz})
+     *
+     * @param arpaFile file
+     * @return model
+     * @throws IOException I/O exception or malformed file
+     */
+    public static NGramLanguageModel loadARPA(File arpaFile)
+            throws IOException
+    {
+        InputStream is = new FileInputStream(arpaFile);
+        if (arpaFile.getName().endsWith(".gz")) {
+            is = new GZIPInputStream(is);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, "utf-8"))) {
+            // header with counts
+            List<Integer> counts = new ArrayList<>();
+            String line = reader.readLine();
+            while (line != null && !line.trim().equals("\\data\\")) {
+                line = reader.readLine();
+            }
+            while ((line = reader.readLine()) != null && !line.startsWith("\\")) {
+                if (line.startsWith("ngram ")) {
+                    counts.add(Integer.valueOf(line.substring(line.indexOf('=') + 1).trim()));
+                }
+            }
+            if (counts.isEmpty()) {
+                throw new IOException("No \\data\\ section in " + arpaFile);
+            }
+
+            ProbingTable[] tables = new ProbingTable[counts.size()];
+
+            // n-gram sections
+            while (line != null && !line.startsWith("\\end\\")) {
+                int order = Integer.parseInt(line.substring(1, line.indexOf('-')));
+                if (order < 1 || order > tables.length) {
+                    throw new IOException("Unexpected section " + line + " in " + arpaFile);
+                }
+
+                int count = counts.get(order - 1);
+                long[] keys = new long[count];
+                float[] probs = new float[count];
+                float[] backoffs = new float[count];
+
+                int i = 0;
+                while ((line = reader.readLine()) != null && !line.startsWith("\\")) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length < order + 1) {
+                        continue;
+                    }
+                    if (i == count) {
+                        throw new IOException("More " + order + "-grams than declared");
+                    }
+
+                    long key = 0;
+                    for (int w = 1; w <= order; w++) {
+                        key = extendKey(key, wordHash(fields[w], 0, fields[w].length()));
+                    }
+                    keys[i] = key;
+                    probs[i] = Float.parseFloat(fields[0]);
+                    backoffs[i] = fields.length > order + 1 ?
+                            Float.parseFloat(fields[order + 1]) :
+                            0f;
+                    i++;
+                }
+
+                if (i != count) {
+                    throw new IOException(
+                            "Expected " + count + " " + order + "-grams but found " + i);
+                }
+
+                tables[order - 1] = new ProbingTable(keys, probs, backoffs);
+            }
+
+            for (int order = 1; order <= tables.length; order++) {
+                if (tables[order - 1] == null) {
+                    throw new IOException("Missing " + order + "-grams in " + arpaFile);
+                }
+            }
+
+            return new NGramLanguageModel(tables,
+                    arpaFile.getAbsolutePath() + ", " + arpaFile.length() + " bytes, modified "
+                            + arpaFile.lastModified());
+        }
+    }
+
+    public int getOrder()
+    {
+        return tables.length;
+    }
+
+    /**
+     * @return the ARPA file (path, size and modification time)
+     */
+    @Override
+    public String toString()
+    {
+        return "NGramLanguageModel(" + description + ")";
+    }
+
+    @Override
+    public double getLogLikelihood(String sentence)
+    {
+        // word hashes with <s> and </s>
+        long[] words = new long[sentence.length() / 2 + 3];
+        int length = 0;
+        words[length++] = beginOfSentence;
+
+        int start = -1;
+        for (int i = 0; i <= sentence.length(); i++) {
+            boolean whitespace = i == sentence.length() || sentence.charAt(i) <= ' ';
+            if (!whitespace && start < 0) {
+                start = i;
+            }
+            else if (whitespace && start >= 0) {
+                long word = wordHash(sentence, start, i);
+                words[length++] = tables[0].find(extendKey(0, word)) >= 0 ? word : unknownWord;
+                start = -1;
+            }
+        }
+        words[length++] = endOfSentence;
+
+        double result = 0;
+        for (int i = 1; i < length; i++) {
+            result += scoreWord(words, i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Back-off probability of words[position] given the preceding words
+     */
+    private double scoreWord(long[] words, int position)
+    {
+        double backoff = 0;
+
+        for (int n = Math.min(tables.length, position + 1); n >= 1; n--) {
+            int first = position - n + 1;
+            long key = 0;
+            for (int i = first; i <= position; i++) {
+                key = extendKey(key, words[i]);
+            }
+
+            int slot = tables[n - 1].find(key);
+            if (slot >= 0) {
+                return tables[n - 1].prob(slot) + backoff;
+            }
+
+            // back off from the (n-1)-gram context
+            if (n > 1) {
+                long contextKey = 0;
+                for (int i = first; i < position; i++) {
+                    contextKey = extendKey(contextKey, words[i]);
+                }
+                int contextSlot = tables[n - 2].find(contextKey);
+                if (contextSlot >= 0) {
+                    backoff += tables[n - 2].backoff(contextSlot);
+                }
+            }
+        }
+
+        return UNKNOWN_WORD_LOG10_PROB + backoff;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of a word, followed by a final mix
+     */
+    static long wordHash(CharSequence text, int start, int end)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+
+        return mix(hash);
+    }
+
+    /**
+     * Appends a word to an n-gram key; never returns 0 which denotes an empty slot
+     */
+    static long extendKey(long key, long wordHash)
+    {
+        long result = mix(key * 0x9e3779b97f4a7c15L + wordHash);
+        return result == 0 ? 1 : result;
+    }
+
+    private static long mix(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Open-addressing (linear probing) table of n-gram hashes with 16-bit quantized
+     * probabilities and back-off weights
+     */
+    static class ProbingTable
+    {
+        private final long[] keys;
+        private final char[] probs;
+        private final char[] backoffs;
+        private final int mask;
+
+        private final float probMin;
+        private final float probStep;
+        private final float backoffMin;
+        private final float backoffStep;
+
+        ProbingTable(long[] ngramKeys, float[] ngramProbs, float[] ngramBackoffs)
+        {
+            // load factor at most 0.5
+            int capacity = Integer.highestOneBit(Math.max(2, ngramKeys.length) * 2 - 1) << 1;
+            keys = new long[capacity];
+            probs = new char[capacity];
+            backoffs = new char[capacity];
+            mask = capacity - 1;
+
+            probMin = min(ngramProbs);
+            probStep = (max(ngramProbs) - probMin) / Character.MAX_VALUE;
+            backoffMin = min(ngramBackoffs);
+            backoffStep = (max(ngramBackoffs) - backoffMin) / Character.MAX_VALUE;
+
+            for (int i = 0; i < ngramKeys.length; i++) {
+                int slot = (int) ngramKeys[i] & mask;
+                while (keys[slot] != 0 && keys[slot] != ngramKeys[i]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = ngramKeys[i];
+                probs[slot] = quantize(ngramProbs[i], probMin, probStep);
+                backoffs[slot] = quantize(ngramBackoffs[i], backoffMin, backoffStep);
+            }
+        }
+
+        int find(long key)
+        {
+            int slot = (int) key & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        float prob(int slot)
+        {
+            return probMin + probs[slot] * probStep;
+        }
+
+        float backoff(int slot)
+        {
+            return backoffMin + backoffs[slot] * backoffStep;
+        }
+
+        private static char quantize(float value, float min, float step)
+        {
+            if (step == 0) {
+                return 0;
+            }
+            long quantized = Math.round((value - min) / step);
+            return (char) Math.max(0, Math.min(Character.MAX_VALUE, quantized));
+        }
+
+        private static float min(float[] values)
+        {
+            float result = 0;
+            for (float value : values) {
+                // ARPA uses -99 for "impossible" (e.g. <s> as a predicted word), keep it out of
+                // the range so it does not ruin the resolution of the quantization
+                if (value > -99f) {
+                    result = Math.min(result, value);
+                }
+            }
+            return result;
+        }
+
+        private static float max(float[] values)
+        {
+            float result = values.length > 0 ? values[0] : 0;
+            for (float value : values) {
+                result = Math.max(result, value);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Embeds {@code reason + claim + warrant} as the normalized average of word embeddings and
+ * indexes the training arguments with their correct warrant (positive) and with the other
+ * warrant (negative). A test warrant is scored by the similarities of its k nearest indexed
+ * neighbours, positive ones counting for and negative ones against it; the warrant with the
+ * higher score wins.
+ *
+ * @author Ivan Habernal
+ */
+public class NearestNeighbourClassifier
+        extends Classifier
+{
+    public static final int DEFAULT_K = 10;
+
+    private final EmbeddingStore embeddings;
+    private final int k;
+    private final int lshTables;
+    private final int lshBits;
+
+    private VectorIndex index;
+
+    /**
+     * +1 for a correct, -1 for an incorrect warrant, by vector id
+     */
+    private byte[] signs;
+
+    /**
+     * Exact search with {@link #DEFAULT_K} neighbours
+     *
+     * @param embeddings word embeddings
+     */
+    public NearestNeighbourClassifier(EmbeddingStore embeddings)
+    {
+        this(embeddings, DEFAULT_K, 0, 0);
+    }
+
+    /**
+     * @param embeddings word embeddings
+     * @param k          number of neighbours
+     * @param lshTables  LSH tables for approximate search, 0 for exact search
+     * @param lshBits    LSH signature bits (see {@link VectorIndex})
+     */
+    public NearestNeighbourClassifier(EmbeddingStore embeddings, int k, int lshTables,
+            int lshBits)
+    {
+        if (k < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + k);
+        }
+
+        this.embeddings = embeddings;
+        this.k = k;
+        this.lshTables = lshTables;
+        this.lshBits = lshBits;
+    }
+
+    @Override
+    public String getConfiguration()
+    {
+        return getClass().getName() + "(embeddings=" + embeddings + ", k=" + k + ", lshTables="
+                + lshTables + ", lshBits=" + lshBits + ")";
+    }
+
+    @Override
+    void train(Set<SingleInstance> trainingData)
+    {
+        train((Collection<SingleInstance>) trainingData);
+    }
+
+    /**
+     * Indexes the training data, which may contain the same instance several times
+     *
+     * @param trainingData training data
+     */
+    public void train(Collection<SingleInstance> trainingData)
+    {
+        VectorIndex newIndex = new VectorIndex(embeddings.getDimension(), lshTables, lshBits, 0);
+        byte[] newSigns = new byte[trainingData.size() * 2];
+
+        for (SingleInstance instance : trainingData) {
+            int correct = instance.getCorrectLabelW0orW1();
+            for (int w = 0; w < 2; w++) {
+                String warrant = w == 0 ? instance.getWarrant0() : instance.getWarrant1();
+                int id = newIndex.add(
+                        embed(instance.getReason(), instance.getClaim(), warrant));
+                newSigns[id] = (byte) (w == correct ? 1 : -1);
+            }
+        }
+        newIndex.build();
+
+        index = newIndex;
+        signs = newSigns;
+    }
+
+    /**
+     * Normalized average of the embeddings of all known words (the zero vector if there is
+     * none)
+     */
+    float[] embed(String... texts)
+    {
+        float[] result = new float[embeddings.getDimension()];
+
+        for (String text : texts) {
+            for (String token : text.split("\\W+")) {
+                if (!token.isEmpty() && !embeddings.addVector(token, result)) {
+                    embeddings.addVector(token.toLowerCase(), result);
+                }
+            }
+        }
+
+        double norm = 0;
+        for (float value : result) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < result.length; i++) {
+                result[i] *= scale;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sum of signed similarities of the nearest neighbours
+     */
+    private float score(String reason, String claim, String warrant, int[] ids, float[] scores)
+    {
+        int found = index.search(embed(reason, claim, warrant), k, ids, scores);
+
+        float result = 0;
+        for (int i = 0; i < found; i++) {
+            result += signs[ids[i]] * scores[i];
+        }
+        return result;
+    }
+
+    /**
+     * Score of warrant0 minus score of warrant1
+     */
+    private float margin(String warrant0, String warrant1, String reason, String claim)
+    {
+        if (index == null) {
+            throw new IllegalStateException("Classifier not trained");
+        }
+
+        int[] ids = new int[k];
+        float[] scores = new float[k];
+        return score(reason, claim, warrant0, ids, scores) - score(reason, claim, warrant1, ids,
+                scores);
+    }
+
+    @Override
+    protected Set<PredictedInstance> makePredictions(Set<SingleInstance> testData)
+    {
+        Set<PredictedInstance> result = new HashSet<>();
+        for (SingleInstance instance : testData) {
+            float margin = margin(instance.getWarrant0(), instance.getWarrant1(),
+                    instance.getReason(), instance.getClaim());
+
+            PredictedInstance predictedInstance = new PredictedInstance(instance);
+            predictedInstance.setPredictedLabelW0orW1(margin > 0 ? 0 : 1);
+            result.add(predictedInstance);
+        }
+
+        return result;
+    }
+
+    @Override
+    protected void makePredictions(ColumnarDataset testData, byte[] predictions)
+    {
+        for (int i = 0; i < predictions.length; i++) {
+            float margin = margin(testData.getWarrant0(i), testData.getWarrant1(i),
+                    testData.getReason(i), testData.getClaim(i));
+            predictions[i] = (byte) (margin > 0 ? 0 : 1);
+        }
+    }
+
+    /**
+     * Pushes predictions with the absolute score difference as the score
+     */
+    @Override
+    protected void makePredictions(Set<SingleInstance> testData, PredictionSink sink)
+    {
+        for (SingleInstance instance : testData) {
+            float margin = margin(instance.getWarrant0(), instance.getWarrant1(),
+                    instance.getReason(), instance.getClaim());
+            sink.accept(instance.getId(), margin > 0 ? 0 : 1, Math.abs(margin));
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running HTTP server making predictions with a trained {@link Classifier}.
+ * <p>
+ * {@code POST /predict} with a JSON object with {@code reason}, {@code claim},
+ * {@code warrant0}, {@code warrant1} and optionally {@code debateTitle} (or {@code debate})
+ * and {@code debateInfo} returns {@code {"label": 0 or 1, "score": ...}}. Concurrent requests
+ * are collected into micro-batches (up to a maximal size, waiting at most a given time after
+ * the first request of the batch) which are predicted at once by
+ * {@link Classifier#predict(ColumnarDataset, PredictionSink)} on a single thread, so the
+ * classifier need not be thread-safe.
+ * <p>
+ * {@code GET /stats} returns the number of requests (including failed ones) and batches,
+ * the throughput and the p50/p99 latency (in milliseconds, over the last
+ * {@link #LATENCY_WINDOW} requests).
+ *
+ * @author Ivan Habernal
+ */
+public class PredictionServer
+{
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 2;
+
+    static final int LATENCY_WINDOW = 10000;
+
+    private static final long REQUEST_TIMEOUT_MILLIS = 30000;
+    private static final int STOP_DELAY_SECONDS = 1;
+
+    private final Classifier classifier;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final HttpServer server;
+    private final ExecutorService handlerExecutor;
+    private final Thread batcher;
+    private final BlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+
+    // statistics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long startNanos;
+
+    /**
+     * Creates a server on the given port (0 for any free port); call {@link #start()}
+     *
+     * @param classifier    trained classifier
+     * @param port          port
+     * @param maxBatchSize  maximal number of requests predicted at once
+     * @param maxWaitMillis maximal time a request waits for others to fill its batch
+     * @throws IOException if the port cannot be bound
+     */
+    public PredictionServer(Classifier classifier, int port, int maxBatchSize,
+            long maxWaitMillis)
+            throws IOException
+    {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + maxBatchSize);
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Invalid argument: " + maxWaitMillis);
+        }
+
+        this.classifier = classifier;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/stats", this::handleStats);
+
+        // handlers only parse and wait for the batch, so there can be many of them
+        handlerExecutor = Executors.newFixedThreadPool(
+                Math.max(16, Runtime.getRuntime().availableProcessors() * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "prediction-server");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        server.setExecutor(handlerExecutor);
+
+        batcher = new Thread(this::runBatches, "prediction-batcher");
+        batcher.setDaemon(true);
+    }
+
+    public void start()
+    {
+        running = true;
+        startNanos = System.nanoTime();
+        batcher.start();
+        server.start();
+    }
+
+    /**
+     * Stops the server; requests still waiting for a batch fail immediately (with 503)
+     */
+    public void stop()
+    {
+        running = false;
+        batcher.interrupt();
+        failQueuedRequests();
+
+        // gives the handlers of the failed requests time to respond
+        server.stop(STOP_DELAY_SECONDS);
+        handlerExecutor.shutdown();
+    }
+
+    private void failQueuedRequests()
+    {
+        List<PendingRequest> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        for (PendingRequest request : queued) {
+            request.result.completeExceptionally(new IllegalStateException("Server stopped"));
+        }
+    }
+
+    /**
+     * @return number of requests waiting for a batch
+     */
+    int getQueuedRequests()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    private void handlePredict(HttpExchange exchange)
+            throws IOException
+    {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("POST expected"));
+                return;
+            }
+
+            PendingRequest request;
+            try {
+                JSONObject json = new JSONObject(
+                        IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+                request = new PendingRequest(json.getString("reason"), json.getString("claim"),
+                        json.getString("warrant0"), json.getString("warrant1"),
+                        json.optString("debateTitle", json.optString("debate", "-")),
+                        json.optString("debateInfo", "-"));
+            }
+            catch (JSONException e) {
+                respond(exchange, 400, error(e.getMessage()));
+                return;
+            }
+
+            queue.add(request);
+            if (!running) {
+                // stopped while parsing
+                failQueuedRequests();
+            }
+
+            JSONObject response = new JSONObject();
+            try {
+                Prediction prediction = request.result
+                        .get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                response.put("label", prediction.label);
+                response.put("score", Double.isNaN(prediction.score) ?
+                        JSONObject.NULL :
+                        prediction.score);
+            }
+            catch (ExecutionException e) {
+                int status = 500;
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    status = 400;
+                }
+                else if (!running) {
+                    status = 503;
+                }
+                respond(exchange, status, error(String.valueOf(e.getCause().getMessage())));
+                return;
+            }
+            catch (TimeoutException e) {
+                respond(exchange, 503, error("Timeout"));
+                return;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, error("Interrupted"));
+                return;
+            }
+
+            respond(exchange, 200, response);
+        }
+        finally {
+            // failed requests count as well, so slow failures show in the percentiles
+            recordLatency(System.nanoTime() - start);
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange)
+            throws IOException
+    {
+        try {
+            respond(exchange, 200, getStatistics());
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Collects requests into batches and predicts them, until stopped
+     */
+    private void runBatches()
+    {
+        List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingRequest next = remaining > 0 ?
+                            queue.poll(remaining, TimeUnit.NANOSECONDS) :
+                            queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            }
+            catch (InterruptedException e) {
+                // stopped; fail whatever was collected
+                for (PendingRequest request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+                return;
+            }
+
+            predict(batch);
+            batch.clear();
+        }
+    }
+
+    private void predict(List<PendingRequest> batch)
+    {
+        batches.incrementAndGet();
+
+        // invalid requests are failed individually, the rest is predicted at once
+        ColumnarDataset.Builder builder = new ColumnarDataset.Builder();
+        List<PendingRequest> valid = new ArrayList<>(batch.size());
+        for (PendingRequest request : batch) {
+            try {
+                // the gold label is unknown
+                builder.add(String.valueOf(valid.size()), request.warrant0, request.warrant1, 0,
+                        request.reason, request.claim, request.debateTitle,
+                        request.debateInfo);
+                valid.add(request);
+            }
+            catch (IllegalArgumentException e) {
+                request.result.completeExceptionally(e);
+            }
+        }
+
+        try {
+            classifier.predict(builder.build(), (instanceId, label, score) -> valid
+                    .get(Integer.parseInt(instanceId)).result
+                    .complete(new Prediction(label, score)));
+
+            for (PendingRequest request : valid) {
+                if (!request.result.isDone()) {
+                    request.result.completeExceptionally(
+                            new IllegalStateException("No prediction made"));
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            for (PendingRequest request : valid) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void recordLatency(long nanos)
+    {
+        long index = requests.getAndIncrement();
+        synchronized (latencies) {
+            latencies[(int) (index % LATENCY_WINDOW)] = nanos;
+        }
+    }
+
+    /**
+     * @return requests, batches, throughput (requests per second since start) and p50/p99
+     * latency in milliseconds
+     */
+    public JSONObject getStatistics()
+    {
+        long requestCount = requests.get();
+        long[] window;
+        synchronized (latencies) {
+            window = Arrays.copyOf(latencies, (int) Math.min(requestCount, LATENCY_WINDOW));
+        }
+        Arrays.sort(window);
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        JSONObject result = new JSONObject();
+        result.put("requests", requestCount);
+        result.put("batches", batches.get());
+        result.put("throughput", seconds > 0 ? requestCount / seconds : 0.0);
+        result.put("latencyP50", percentileMillis(window, 0.50));
+        result.put("latencyP99", percentileMillis(window, 0.99));
+        return result;
+    }
+
+    private static double percentileMillis(long[] sorted, double p)
+    {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static JSONObject error(String message)
+    {
+        JSONObject result = new JSONObject();
+        result.put("error", message);
+        return result;
+    }
+
+    private static void respond(HttpExchange exchange, int status, JSONObject json)
+            throws IOException
+    {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static class PendingRequest
+    {
+        private final String reason;
+        private final String claim;
+        private final String warrant0;
+        private final String warrant1;
+        private final String debateTitle;
+        private final String debateInfo;
+        private final CompletableFuture<Prediction> result = new CompletableFuture<>();
+
+        PendingRequest(String reason, String claim, String warrant0, String warrant1,
+                String debateTitle, String debateInfo)
+        {
+            this.reason = reason;
+            this.claim = claim;
+            this.warrant0 = warrant0;
+            this.warrant1 = warrant1;
+            this.debateTitle = debateTitle;
+            this.debateInfo = debateInfo;
+        }
+    }
+
+    private static class Prediction
+    {
+        private final int label;
+        private final double score;
+
+        Prediction(int label, double score)
+        {
+            this.label = label;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Serves a saved classifier (see {@link Classifier#save(File)}), or trains
+     * {@link HashedLinearClassifier} on the training data if the model file does not exist
+     * and saves it there; arguments are the port (default 8091) and the model file (optional)
+     */
+    public static void main(String[] args)
+            throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8091;
+        File modelFile = args.length > 1 ? new File(args[1]) : null;
+
+        Classifier classifier;
+        if (modelFile != null && modelFile.exists()) {
+            classifier = Classifier.load(modelFile);
+        }
+        else {
+            HashedLinearClassifier hashedLinearClassifier = new HashedLinearClassifier(0);
+            hashedLinearClassifier.train(ClassificationMain
+                    .loadData(new File("mturk/annotation-task/data/final/train.tsv")));
+            if (modelFile != null) {
+                hashedLinearClassifier.save(modelFile);
+            }
+            classifier = hashedLinearClassifier;
+        }
+
+        PredictionServer server = new PredictionServer(classifier, port,
+                DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_WAIT_MILLIS);
+        server.start();
+        System.out.println("Listening on port " + server.getPort() + " with "
+                + classifier.getConfiguration());
+    }
+}
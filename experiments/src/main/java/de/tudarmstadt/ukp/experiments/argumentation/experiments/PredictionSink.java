@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+/**
+ * Receives predictions one by one as a classifier makes them; implementations must be
+ * thread-safe, as classifiers may predict in parallel
+ *
+ * @author Ivan Habernal
+ */
+public interface PredictionSink
+{
+    /**
+     * Accepts a single prediction
+     *
+     * @param instanceId           ID of the instance
+     * @param predictedLabelW0orW1 predicted label, 0 or 1
+     * @param score                classifier-specific confidence of the prediction (higher is
+     *                             more confident), {@code Double.NaN} if not available
+     */
+    void accept(String instanceId, int predictedLabelW0orW1, double score);
+
+    /**
+     * Returns a sink which passes each prediction to all given sinks
+     *
+     * @param sinks sinks
+     * @return sink
+     */
+    static PredictionSink tee(PredictionSink... sinks)
+    {
+        return (instanceId, predictedLabelW0orW1, score) -> {
+            for (PredictionSink sink : sinks) {
+                sink.accept(instanceId, predictedLabelW0orW1, score);
+            }
+        };
+    }
+}
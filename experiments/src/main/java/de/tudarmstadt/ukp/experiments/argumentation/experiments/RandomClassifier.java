@@ -18,6 +18,7 @@
 
 package de.tudarmstadt.ukp.experiments.argumentation.experiments;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
@@ -28,10 +29,12 @@ import java.util.Set;
 public class RandomClassifier extends Classifier
 {
     private final Random random;
+    private final long seed;
 
     public RandomClassifier(long seed)
     {
         this.random = new Random(seed);
+        this.seed = seed;
     }
 
     @Override
@@ -47,6 +50,69 @@ public class RandomClassifier extends Classifier
         return result;
     }
 
+    @Override
+    protected void makePredictions(ColumnarDataset testData, byte[] predictions)
+    {
+        for (int i = 0; i < predictions.length; i++) {
+            predictions[i] = (byte) random.nextInt(2);
+        }
+    }
+
+    @Override
+    protected void makePredictions(Set<SingleInstance> testData, PredictionSink sink)
+    {
+        for (SingleInstance instance : testData) {
+            sink.accept(instance.getId(), random.nextInt(2), Double.NaN);
+        }
+    }
+
+    @Override
+    protected void makePredictions(ColumnarDataset testData, PredictionSink sink)
+    {
+        for (int i = 0; i < testData.size(); i++) {
+            sink.accept(testData.getId(i), random.nextInt(2), Double.NaN);
+        }
+    }
+
+    @Override
+    public String getConfiguration()
+    {
+        return configuration(seed);
+    }
+
+    /**
+     * Configuration of the classifier with the given seed, without creating it (see
+     * {@link ExperimentScheduler.ConfigurationFactory})
+     *
+     * @param seed seed
+     * @return configuration
+     */
+    public static String configuration(long seed)
+    {
+        return RandomClassifier.class.getName() + "(seed=" + seed + ")";
+    }
+
+    @Override
+    public boolean isSaveable()
+    {
+        return true;
+    }
+
+    /**
+     * Only the seed is saved; the loaded classifier starts the random sequence anew
+     */
+    @Override
+    protected void writeModel(ModelFile.Writer writer)
+            throws IOException
+    {
+        writer.putLong(seed);
+    }
+
+    static RandomClassifier readModel(ModelFile modelFile)
+    {
+        return new RandomClassifier(modelFile.getPayload().getLong(0));
+    }
+
     @Override
     void train(Set<SingleInstance> trainingData)
     {
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk store of experiment results, addressed by the SHA-256 of the classifier
+ * configuration ({@link Classifier#getConfiguration()}) and the contents of the data files,
+ * so a repeated (configuration, data) pair can be skipped, also across sessions.
+ * <p>
+ * Each entry is a directory with the predictions for each split ({@code id, label, score}
+ * per line), an {@code artefacts} directory for trained models and {@code result.properties}
+ * with the metrics, which is written last (atomically), so only finished entries are found.
+ *
+ * @author Ivan Habernal
+ */
+public class ResultStore
+{
+    private static final String RESULT_FILE = "result.properties";
+    private static final String ARTEFACTS_DIRECTORY = "artefacts";
+
+    private final File directory;
+
+    /**
+     * Content hashes of data files, by path, size and modification time
+     */
+    private final Map<String, String> fileHashes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public ResultStore(File directory)
+            throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Computes the key of a classifier configuration on the given data
+     *
+     * @param configuration classifier configuration
+     * @param dataFiles     training and test files, in a fixed order
+     * @return key (hexadecimal SHA-256)
+     * @throws IOException I/O exception
+     */
+    public String computeKey(String configuration, File... dataFiles)
+            throws IOException
+    {
+        StringBuilder sb = new StringBuilder(configuration);
+        for (File dataFile : dataFiles) {
+            sb.append('\n').append(hashFile(dataFile));
+        }
+
+        MessageDigest digest = sha256();
+        return toHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String hashFile(File file)
+            throws IOException
+    {
+        String fileKey = file.getAbsolutePath() + "\t" + file.length() + "\t" + file
+                .lastModified();
+        String result = fileHashes.get(fileKey);
+
+        if (result == null) {
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[1 << 16];
+            try (InputStream is = new FileInputStream(file)) {
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            result = toHex(digest.digest());
+            fileHashes.put(fileKey, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the stored metrics of a finished entry; counts a hit or a miss
+     *
+     * @param key key
+     * @return metrics or null if there is no finished entry
+     * @throws IOException I/O exception
+     */
+    public Properties lookup(String key)
+            throws IOException
+    {
+        File resultFile = new File(getEntryDirectory(key), RESULT_FILE);
+        if (!resultFile.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Properties result = new Properties();
+        try (InputStream is = new FileInputStream(resultFile)) {
+            result.load(is);
+        }
+        hits.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Finishes an entry by storing its metrics
+     *
+     * @param key    key
+     * @param result metrics
+     * @throws IOException I/O exception
+     */
+    public void commit(String key, Properties result)
+            throws IOException
+    {
+        File entryDirectory = createEntryDirectory(key);
+        File tmpFile = new File(entryDirectory, RESULT_FILE + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmpFile)) {
+            result.store(os, null);
+        }
+
+        File resultFile = new File(entryDirectory, RESULT_FILE);
+        if (!tmpFile.renameTo(resultFile)) {
+            throw new IOException("Cannot rename " + tmpFile + " to " + resultFile);
+        }
+    }
+
+    /**
+     * Opens a sink writing the predictions on a split into the entry
+     *
+     * @param key   key
+     * @param split name of the split (such as "dev")
+     * @return sink, must be closed
+     * @throws IOException I/O exception
+     */
+    public PredictionWriter openPredictions(String key, String split)
+            throws IOException
+    {
+        return new PredictionWriter(new File(createEntryDirectory(key), predictionsFile(split)));
+    }
+
+    /**
+     * Directory for trained models and other artefacts of the entry (created if needed)
+     *
+     * @param key key
+     * @return directory
+     * @throws IOException I/O exception
+     */
+    public File getArtefactDirectory(String key)
+            throws IOException
+    {
+        File result = new File(createEntryDirectory(key), ARTEFACTS_DIRECTORY);
+        if (!result.isDirectory() && !result.mkdirs()) {
+            throw new IOException("Cannot create directory " + result);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of lookups which found a finished entry
+     */
+    public int getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups which did not find a finished entry
+     */
+    public int getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        int hits = getHits();
+        int misses = getMisses();
+        return String.format(Locale.ENGLISH,
+                "ResultStore %s: %d hits, %d misses (%.1f%% hit rate)", directory, hits, misses,
+                hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses));
+    }
+
+    private File getEntryDirectory(String key)
+    {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    private File createEntryDirectory(String key)
+            throws IOException
+    {
+        File result = getEntryDirectory(key);
+        if (!result.isDirectory() && !result.mkdirs()) {
+            throw new IOException("Cannot create directory " + result);
+        }
+        return result;
+    }
+
+    private static String predictionsFile(String split)
+    {
+        return "predictions-" + split + ".tsv";
+    }
+
+    private static MessageDigest sha256()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sink writing predictions to a file, one per line
+     */
+    public static class PredictionWriter
+            implements PredictionSink, Closeable
+    {
+        private final PrintWriter writer;
+
+        PredictionWriter(File file)
+                throws IOException
+        {
+            writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+                    StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public synchronized void accept(String instanceId, int predictedLabelW0orW1,
+                double score)
+        {
+            writer.print(instanceId);
+            writer.print('\t');
+            writer.print(predictedLabelW0orW1);
+            writer.print('\t');
+            writer.println(score);
+        }
+
+        @Override
+        public synchronized void close()
+                throws IOException
+        {
+            writer.close();
+            if (writer.checkError()) {
+                throw new IOException("Writing predictions failed");
+            }
+        }
+    }
+}
@@ -28,6 +28,8 @@ import java.util.Objects;
 public class SingleInstance
         implements Comparable<SingleInstance>
 {
+    static final int NUMBER_OF_COLUMNS = 8;
+
     private final String id;
     private final String warrant0;
     private final String warrant1;
@@ -51,6 +53,67 @@ public class SingleInstance
 
     public SingleInstance(String id, String warrant0, String warrant1, Integer correctLabelW0orW1,
             String reason, String claim, String debateTitle, String debateInfo)
+    {
+        validate(id, warrant0, warrant1, correctLabelW0orW1, reason, claim, debateTitle,
+                debateInfo);
+
+        this.id = id;
+        this.warrant0 = warrant0;
+        this.warrant1 = warrant1;
+        this.correctLabelW0orW1 = correctLabelW0orW1;
+        this.reason = reason;
+        this.claim = claim;
+        this.debateTitle = debateTitle;
+        this.debateInfo = debateInfo;
+    }
+
+    public SingleInstance(String tsvLine)
+    {
+        this(splitTsvLine(tsvLine));
+    }
+
+    private SingleInstance(String[] fields)
+    {
+        this(fields[0], fields[1], fields[2], Integer.valueOf(fields[3]), fields[4], fields[5],
+                fields[6], fields[7]);
+    }
+
+    /**
+     * Splits the line into the eight columns in a single pass; anything after the eighth
+     * column is ignored
+     *
+     * @param tsvLine line
+     * @return eight fields
+     */
+    static String[] splitTsvLine(String tsvLine)
+    {
+        String[] result = new String[NUMBER_OF_COLUMNS];
+
+        int start = 0;
+        for (int i = 0; i < NUMBER_OF_COLUMNS; i++) {
+            int end = tsvLine.indexOf('\t', start);
+            if (end < 0) {
+                if (i < NUMBER_OF_COLUMNS - 1) {
+                    throw new IllegalArgumentException(
+                            "Expected " + NUMBER_OF_COLUMNS + " columns but got " + (i + 1));
+                }
+                end = tsvLine.length();
+            }
+
+            result[i] = tsvLine.substring(start, end);
+            start = end + 1;
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks that all fields are non-blank and the label is 0 or 1
+     *
+     * @throws IllegalArgumentException otherwise
+     */
+    static void validate(String id, String warrant0, String warrant1, Integer correctLabelW0orW1,
+            String reason, String claim, String debateTitle, String debateInfo)
     {
         if (StringUtils.isBlank(id)) {
             throw new IllegalArgumentException("Blank parameter: id");
@@ -76,22 +139,6 @@ public class SingleInstance
         if (StringUtils.isBlank(debateInfo)) {
             throw new IllegalArgumentException("Blank parameter: debateInfo");
         }
-
-        this.id = id;
-        this.warrant0 = warrant0;
-        this.warrant1 = warrant1;
-        this.correctLabelW0orW1 = correctLabelW0orW1;
-        this.reason = reason;
-        this.claim = claim;
-        this.debateTitle = debateTitle;
-        this.debateInfo = debateInfo;
-    }
-
-    public SingleInstance(String tsvLine)
-    {
-        this(tsvLine.split("\t")[0], tsvLine.split("\t")[1], tsvLine.split("\t")[2],
-                Integer.valueOf(tsvLine.split("\t")[3]), tsvLine.split("\t")[4],
-                tsvLine.split("\t")[5], tsvLine.split("\t")[6], tsvLine.split("\t")[7]);
     }
 
     public String getId()
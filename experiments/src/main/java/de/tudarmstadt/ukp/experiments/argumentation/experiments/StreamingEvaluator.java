@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import com.github.habernal.confusionmatrix.ConfusionMatrix;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates predictions as they arrive, without keeping them. Accuracy, the confusion matrix
+ * and per-debate accuracies are updated with atomic counters, so the sink can be shared by
+ * parallel classifiers and the metrics can be read at any time during a run (they then
+ * reflect the predictions seen so far). Each instance may be predicted only once.
+ *
+ * @author Ivan Habernal
+ */
+public class StreamingEvaluator
+        implements PredictionSink
+{
+    private final ColumnarDataset goldData;
+    private final Map<String, Integer> indexById;
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong correct = new AtomicLong();
+
+    /**
+     * Counts of (gold, predicted) at position gold * 2 + predicted
+     */
+    private final AtomicIntegerArray confusionCounts = new AtomicIntegerArray(4);
+
+    private final AtomicIntegerArray debateTotal;
+    private final AtomicIntegerArray debateCorrect;
+
+    /**
+     * 1 for instances already predicted, by index
+     */
+    private final AtomicIntegerArray predicted;
+
+    /**
+     * Creates an evaluator for predictions on the given data
+     *
+     * @param goldData data with gold labels; IDs must be unique
+     */
+    public StreamingEvaluator(ColumnarDataset goldData)
+    {
+        this.goldData = goldData;
+        this.indexById = new HashMap<>(goldData.size() * 2);
+        for (int i = 0; i < goldData.size(); i++) {
+            if (indexById.put(goldData.getId(i), i) != null) {
+                throw new IllegalArgumentException(
+                        "Invalid argument: duplicate instance " + goldData.getId(i));
+            }
+        }
+
+        this.debateTotal = new AtomicIntegerArray(goldData.getNumberOfDebates());
+        this.debateCorrect = new AtomicIntegerArray(goldData.getNumberOfDebates());
+        this.predicted = new AtomicIntegerArray(goldData.size());
+    }
+
+    /**
+     * Creates an evaluator for predictions on the given instances
+     *
+     * @param goldData instances with gold labels
+     */
+    public StreamingEvaluator(Collection<? extends SingleInstance> goldData)
+    {
+        this(ColumnarDataset.fromInstances(goldData));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the instance is unknown or was already predicted
+     */
+    @Override
+    public void accept(String instanceId, int predictedLabelW0orW1, double score)
+    {
+        Integer index = indexById.get(instanceId);
+        if (index == null) {
+            throw new IllegalArgumentException("Invalid argument: unknown instance " + instanceId);
+        }
+        if (predictedLabelW0orW1 < 0 || predictedLabelW0orW1 > 1) {
+            throw new IllegalArgumentException("Invalid argument: " + predictedLabelW0orW1);
+        }
+        if (!predicted.compareAndSet(index, 0, 1)) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: duplicate prediction for " + instanceId);
+        }
+
+        int gold = goldData.getCorrectLabelW0orW1(index);
+        int debateId = goldData.getDebateId(index);
+
+        // total first and correct last (read in the opposite order), so a concurrent reader
+        // never sees more correct than total predictions
+        total.incrementAndGet();
+        confusionCounts.incrementAndGet(gold * 2 + predictedLabelW0orW1);
+        debateTotal.incrementAndGet(debateId);
+        if (gold == predictedLabelW0orW1) {
+            debateCorrect.incrementAndGet(debateId);
+            correct.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of predictions seen so far
+     */
+    public long getNumberOfPredictions()
+    {
+        return total.get();
+    }
+
+    /**
+     * @return number of instances to be predicted
+     */
+    public int getNumberOfInstances()
+    {
+        return goldData.size();
+    }
+
+    /**
+     * @return accuracy of the predictions seen so far, NaN if there are none
+     */
+    public double getAccuracy()
+    {
+        long correctSoFar = correct.get();
+        long totalSoFar = total.get();
+        return totalSoFar == 0 ? Double.NaN : (double) correctSoFar / totalSoFar;
+    }
+
+    /**
+     * @return a new confusion matrix (gold vs. predicted) of the predictions seen so far
+     */
+    public ConfusionMatrix getConfusionMatrix()
+    {
+        ConfusionMatrix result = new ConfusionMatrix();
+        for (int gold = 0; gold < 2; gold++) {
+            for (int predicted = 0; predicted < 2; predicted++) {
+                int count = confusionCounts.get(gold * 2 + predicted);
+                if (count > 0) {
+                    result.increaseValue(String.valueOf(gold), String.valueOf(predicted), count);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return accuracy per debate title, only debates with at least one prediction so far
+     */
+    public SortedMap<String, Double> getDebateAccuracies()
+    {
+        SortedMap<String, Double> result = new TreeMap<>();
+        for (int debateId = 0; debateId < debateTotal.length(); debateId++) {
+            int debateCorrectSoFar = debateCorrect.get(debateId);
+            int debateTotalSoFar = debateTotal.get(debateId);
+            if (debateTotalSoFar > 0) {
+                result.put(goldData.getDebateTitleById(debateId),
+                        (double) debateCorrectSoFar / debateTotalSoFar);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if all instances were predicted (each once, as duplicates are rejected)
+     */
+    public boolean isComplete()
+    {
+        return total.get() == goldData.size();
+    }
+}
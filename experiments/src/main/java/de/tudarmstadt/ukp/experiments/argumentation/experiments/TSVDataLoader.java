@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Streaming loader of the train/dev/test TSV files (format described in
+ * {@code Step9aFinalDataProvider}); reads the file line by line in a single pass and splits
+ * each line only once.
+ *
+ * @author Ivan Habernal
+ */
+public class TSVDataLoader
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Loads a file with unique instance IDs (train, dev, test)
+     *
+     * @param file file
+     * @return instances
+     * @throws IOException           I/O exception
+     * @throws IllegalStateException if the file contains duplicate IDs or malformed lines
+     */
+    public static Set<SingleInstance> loadSet(File file)
+            throws IOException
+    {
+        Set<SingleInstance> result = new HashSet<>();
+        int dataLines = load(file, result);
+
+        // make sure there are all instances
+        if (result.size() != dataLines) {
+            throw new IllegalStateException(
+                    "Inconsistent input: " + dataLines + " lines but " + result.size()
+                            + " unique instances in " + file);
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads a file which may contain the same instance several times, such as the
+     * {@code -w-swap} and {@code -doubled} variants of the training data
+     *
+     * @param file file
+     * @return instances in the order of the file
+     * @throws IOException           I/O exception
+     * @throws IllegalStateException if the file contains malformed lines
+     */
+    public static List<SingleInstance> loadList(File file)
+            throws IOException
+    {
+        List<SingleInstance> result = new ArrayList<>();
+        load(file, result);
+
+        return result;
+    }
+
+    /**
+     * Loads a file directly into a {@link ColumnarDataset}, without creating
+     * {@link SingleInstance} objects; duplicate IDs are kept
+     *
+     * @param file file
+     * @return dataset in the order of the file
+     * @throws IOException           I/O exception
+     * @throws IllegalStateException if the file contains malformed lines
+     */
+    public static ColumnarDataset loadColumnar(File file)
+            throws IOException
+    {
+        ColumnarDataset.Builder builder = new ColumnarDataset.Builder();
+        forEachDataLine(file, line -> {
+            String[] fields = SingleInstance.splitTsvLine(line);
+            builder.add(fields[0], fields[1], fields[2], Integer.valueOf(fields[3]), fields[4],
+                    fields[5], fields[6], fields[7]);
+        });
+
+        return builder.build();
+    }
+
+    /**
+     * Streams the file into the collection
+     *
+     * @return number of data lines (without the comment line)
+     */
+    private static int load(File file, Collection<SingleInstance> result)
+            throws IOException
+    {
+        return forEachDataLine(file, line -> result.add(new SingleInstance(line)));
+    }
+
+    /**
+     * Reads the file in a single pass and passes each line except the header to the consumer
+     *
+     * @return number of data lines (without the comment line)
+     */
+    private static int forEachDataLine(File file, Consumer<String> lineConsumer)
+            throws IOException
+    {
+        int lineNumber = 0;
+        int commentLines = 0;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8),
+                BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                if (line.startsWith("#")) {
+                    commentLines++;
+                }
+                else {
+                    try {
+                        lineConsumer.accept(line);
+                    }
+                    catch (IllegalArgumentException e) {
+                        throw new IllegalStateException(
+                                "Inconsistent input on line " + lineNumber + " in " + file + ": "
+                                        + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+        // only the header is expected to be a comment
+        if (commentLines != 1) {
+            throw new IllegalStateException(
+                    "Inconsistent input: expected one header line but found " + commentLines
+                            + " in " + file);
+        }
+
+        return lineNumber - commentLines;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2017
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Maximum inner product search over vectors stored row by row in a single flat
+ * {@code float[]}. The exact search scans the matrix four rows at a time (four independent
+ * accumulators over the same query values, which the JIT compiles into a tight loop). With
+ * locality-sensitive hashing enabled ({@link #VectorIndex(int, int, int, long)}), candidates
+ * are the vectors sharing a bucket of random-hyperplane signatures with the query in at least
+ * one of the tables, re-ranked exactly; this is approximate and intended for normalized
+ * vectors (cosine similarity).
+ * <p>
+ * Vectors are added first, then {@link #build()} is called; searching is thread-safe.
+ *
+ * @author Ivan Habernal
+ */
+public class VectorIndex
+{
+    private final int dimension;
+    private float[] matrix;
+    private int size;
+
+    // LSH
+    private final int lshTables;
+    private final int lshBits;
+    private final float[][] hyperplanes;
+    private int[][] bucketSignatures;
+    private int[][] bucketIds;
+
+    private boolean built;
+
+    /**
+     * Creates an index with exact search
+     *
+     * @param dimension dimension of the vectors
+     */
+    public VectorIndex(int dimension)
+    {
+        this(dimension, 0, 0, 0);
+    }
+
+    /**
+     * Creates an index with approximate search by random-hyperplane LSH
+     *
+     * @param dimension dimension of the vectors
+     * @param lshTables number of hash tables (more tables find more neighbours), 0 for exact
+     *                  search
+     * @param lshBits   signature bits per table, 1 to 31 (more bits mean smaller buckets)
+     * @param seed      seed of the random hyperplanes
+     */
+    public VectorIndex(int dimension, int lshTables, int lshBits, long seed)
+    {
+        if (dimension < 1) {
+            throw new IllegalArgumentException("Invalid argument: " + dimension);
+        }
+        if (lshTables < 0 || (lshTables > 0 && (lshBits < 1 || lshBits > 31))) {
+            throw new IllegalArgumentException(
+                    "Invalid argument: " + lshTables + " tables, " + lshBits + " bits");
+        }
+
+        this.dimension = dimension;
+        this.matrix = new float[dimension * 16];
+        this.lshTables = lshTables;
+        this.lshBits = lshBits;
+
+        Random random = new Random(seed);
+        hyperplanes = new float[lshTables * lshBits][dimension];
+        for (float[] hyperplane : hyperplanes) {
+            for (int d = 0; d < dimension; d++) {
+                hyperplane[d] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    /**
+     * Adds a vector (copied)
+     *
+     * @param vector vector
+     * @return id of the vector (ids are consecutive from 0)
+     */
+    public int add(float[] vector)
+    {
+        if (built) {
+            throw new IllegalStateException("Index already built");
+        }
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Invalid argument: dimension " + vector.length);
+        }
+
+        if ((long) (size + 1) * dimension > matrix.length) {
+            long capacity = Math.max((long) (size + 1) * dimension, (long) matrix.length * 2);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Index full: " + size + " vectors");
+            }
+            matrix = Arrays.copyOf(matrix, (int) capacity);
+        }
+
+        System.arraycopy(vector, 0, matrix, size * dimension, dimension);
+        return size++;
+    }
+
+    /**
+     * Finishes the index (builds the LSH tables, if any); no vectors can be added afterwards
+     */
+    public void build()
+    {
+        matrix = Arrays.copyOf(matrix, size * dimension);
+
+        bucketSignatures = new int[lshTables][];
+        bucketIds = new int[lshTables][];
+        for (int t = 0; t < lshTables; t++) {
+            // (signature, id) pairs sorted by signature; a bucket is a range
+            long[] pairs = new long[size];
+            for (int id = 0; id < size; id++) {
+                pairs[id] = ((long) signature(matrix, id * dimension, t) << 32) | id;
+            }
+            Arrays.sort(pairs);
+
+            bucketSignatures[t] = new int[size];
+            bucketIds[t] = new int[size];
+            for (int i = 0; i < size; i++) {
+                bucketSignatures[t][i] = (int) (pairs[i] >>> 32);
+                bucketIds[t][i] = (int) pairs[i];
+            }
+        }
+
+        built = true;
+    }
+
+    /**
+     * Finds the vectors with the highest inner product with the query
+     *
+     * @param query        query vector
+     * @param k            number of neighbours
+     * @param resultIds    output, ids of the neighbours by decreasing score (length at least k)
+     * @param resultScores output, their inner products (length at least k)
+     * @return number of neighbours found; at most k, may be less with LSH
+     */
+    public int search(float[] query, int k, int[] resultIds, float[] resultScores)
+    {
+        if (!built) {
+            throw new IllegalStateException("Index not built");
+        }
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Invalid argument: dimension " + query.length);
+        }
+
+        TopK topK = new TopK(k, resultIds, resultScores);
+        if (lshTables == 0) {
+            scan(query, topK);
+        }
+        else {
+            for (int id : candidates(query)) {
+                topK.offer(id, dot(query, id * dimension));
+            }
+        }
+
+        return topK.size;
+    }
+
+    /**
+     * Exact scan, four rows at a time
+     */
+    private void scan(float[] query, TopK topK)
+    {
+        int id = 0;
+        for (; id + 4 <= size; id += 4) {
+            int offset0 = id * dimension;
+            int offset1 = offset0 + dimension;
+            int offset2 = offset1 + dimension;
+            int offset3 = offset2 + dimension;
+
+            float sum0 = 0;
+            float sum1 = 0;
+            float sum2 = 0;
+            float sum3 = 0;
+            for (int d = 0; d < dimension; d++) {
+                float q = query[d];
+                sum0 += matrix[offset0 + d] * q;
+                sum1 += matrix[offset1 + d] * q;
+                sum2 += matrix[offset2 + d] * q;
+                sum3 += matrix[offset3 + d] * q;
+            }
+
+            topK.offer(id, sum0);
+            topK.offer(id + 1, sum1);
+            topK.offer(id + 2, sum2);
+            topK.offer(id + 3, sum3);
+        }
+        for (; id < size; id++) {
+            topK.offer(id, dot(query, id * dimension));
+        }
+    }
+
+    private float dot(float[] query, int offset)
+    {
+        float sum = 0;
+        for (int d = 0; d < dimension; d++) {
+            sum += matrix[offset + d] * query[d];
+        }
+        return sum;
+    }
+
+    /**
+     * Ids in the query's bucket of any table, sorted and without duplicates
+     */
+    private int[] candidates(float[] query)
+    {
+        int[] result = new int[0];
+        int n = 0;
+
+        for (int t = 0; t < lshTables; t++) {
+            int signature = signature(query, 0, t);
+            int[] signatures = bucketSignatures[t];
+
+            int from = lowerBound(signatures, signature);
+            int to = lowerBound(signatures, signature + 1);
+            if (signature == Integer.MAX_VALUE) {
+                to = signatures.length;
+            }
+
+            if (n + to - from > result.length) {
+                result = Arrays.copyOf(result, Math.max(n + to - from, result.length * 2));
+            }
+            System.arraycopy(bucketIds[t], from, result, n, to - from);
+            n += to - from;
+        }
+
+        Arrays.sort(result, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+
+    /**
+     * Non-negative signature of the vector at the offset in the table
+     */
+    private int signature(float[] vectors, int offset, int table)
+    {
+        int result = 0;
+        for (int b = 0; b < lshBits; b++) {
+            float[] hyperplane = hyperplanes[table * lshBits + b];
+            float sum = 0;
+            for (int d = 0; d < dimension; d++) {
+                sum += vectors[offset + d] * hyperplane[d];
+            }
+            if (sum > 0) {
+                result |= 1 << b;
+            }
+        }
+        return result;
+    }
+
+    private static int lowerBound(int[] sorted, int value)
+    {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int getDimension()
+    {
+        return dimension;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Best k (id, score) pairs kept sorted by decreasing score in the output arrays; ties
+     * are broken by the lower id
+     */
+    private static class TopK
+    {
+        private final int k;
+        private final int[] ids;
+        private final float[] scores;
+        private int size;
+
+        TopK(int k, int[] ids, float[] scores)
+        {
+            if (k < 1 || ids.length < k || scores.length < k) {
+                throw new IllegalArgumentException("Invalid argument: " + k);
+            }
+            this.k = k;
+            this.ids = ids;
+            this.scores = scores;
+        }
+
+        void offer(int id, float score)
+        {
+            if (size == k && score <= scores[k - 1]) {
+                return;
+            }
+
+            int position = size < k ? size++ : k - 1;
+            while (position > 0 && scores[position - 1] < score) {
+                scores[position] = scores[position - 1];
+                ids[position] = ids[position - 1];
+                position--;
+            }
+            scores[position] = score;
+            ids[position] = id;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package de.tudarmstadt.ukp.experiments.argumentation.experiments;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local load test: many concurrent clients against a server with a random classifier, and
+ * its shutdown
+ *
+ * @author Ivan Habernal
+ */
+public class PredictionServerTest
+{
+    private static final int CLIENTS = 16;
+    private static final int REQUESTS_PER_CLIENT = 50;
+
+    PredictionServer server;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new PredictionServer(new RandomClassifier(0), 0, 32, 5);
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop();
+    }
+
+    @Test
+    public void concurrentRequestsAreBatched()
+            throws Exception
+    {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<Integer>> labels = new ArrayList<>();
+        for (int i = 0; i < CLIENTS * REQUESTS_PER_CLIENT; i++) {
+            int requestNumber = i;
+            labels.add(clients.submit(() -> {
+                JSONObject request = new JSONObject();
+                request.put("reason", "reason " + requestNumber);
+                request.put("claim", "claim");
+                request.put("warrant0", "first warrant");
+                request.put("warrant1", "second warrant");
+                request.put("debate", "debate " + (requestNumber % 3));
+
+                HttpURLConnection connection = open("/predict");
+                assertEquals(200, post(connection, request));
+                return new JSONObject(read(connection)).getInt("label");
+            }));
+        }
+
+        for (Future<Integer> label : labels) {
+            int value = label.get();
+            assertTrue(value == 0 || value == 1);
+        }
+        clients.shutdown();
+
+        JSONObject stats = new JSONObject(read(open("/stats")));
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, stats.getLong("requests"));
+        assertTrue(stats.getLong("batches") < CLIENTS * REQUESTS_PER_CLIENT);
+        assertTrue(stats.getDouble("latencyP99") > 0);
+        assertTrue(stats.getDouble("latencyP99") >= stats.getDouble("latencyP50"));
+        assertTrue(stats.getDouble("throughput") > 0);
+    }
+
+    @Test
+    public void invalidRequestIsRejected()
+            throws Exception
+    {
+        JSONObject request = new JSONObject();
+        request.put("reason", "reason");
+
+        assertEquals(400, post(open("/predict"), request));
+    }
+
+    @Test
+    public void queuedRequestsFailOnStop()
+            throws Exception
+    {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // blocks the batcher inside the first batch, so the next request stays queued
+        Classifier blocking = new RandomClassifier(0)
+        {
+            @Override
+            public void predict(ColumnarDataset testData, PredictionSink sink)
+            {
+                entered.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.predict(testData, sink);
+            }
+        };
+        PredictionServer stopped = new PredictionServer(blocking, 0, 1, 0);
+        stopped.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            clients.submit(() -> post(open(stopped, "/predict"), validRequest()));
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            Future<Integer> queued = clients
+                    .submit(() -> post(open(stopped, "/predict"), validRequest()));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (stopped.getQueuedRequests() == 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+
+            stopped.stop();
+            // fails right away instead of waiting for the request timeout
+            assertEquals(503, (int) queued.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+
+    private static JSONObject validRequest()
+    {
+        JSONObject request = new JSONObject();
+        request.put("reason", "reason");
+        request.put("claim", "claim");
+        request.put("warrant0", "first warrant");
+        request.put("warrant1", "second warrant");
+        return request;
+    }
+
+    private HttpURLConnection open(String path)
+            throws IOException
+    {
+        return open(server, path);
+    }
+
+    private static HttpURLConnection open(PredictionServer server, String path)
+            throws IOException
+    {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+                .openConnection();
+    }
+
+    private static int post(HttpURLConnection connection, JSONObject json)
+            throws IOException
+    {
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+
+    private static String read(HttpURLConnection connection)
+            throws IOException
+    {
+        return IOUtils.toString(connection.getInputStream(), StandardCharsets.UTF_8);
+    }
+}